@@ -0,0 +1,161 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD concurrency limiter.
+ * <p>
+ * Limit grows while responses are healthy (by one per response in slow start, by about one per round trip
+ * after it) and shrinks multiplicatively on throttling (429), server errors (5xx) or when latency of small
+ * requests rises above the observed baseline.
+ * <p>
+ * Waiting uses {@link ReentrantLock} instead of monitor, so blocked virtual threads don't pin carrier threads.
+ */
+public class AdaptiveLimiter implements BlockingExecutors.Limiter, HttpTransport.ResponseListener {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(AdaptiveLimiter.class);
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+  private static final double ERROR_DECREASE = 0.5;
+  private static final double LATENCY_DECREASE = 0.9;
+  private static final double LATENCY_TOLERANCE = 2.0;
+  private static final double LATENCY_SMOOTHING = 0.2;
+  private static final double BASELINE_DRIFT = 0.01;
+  private static final long DECREASE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+  private final int minLimit;
+  private final int maxLimit;
+  @NotNull
+  private final ReentrantLock lock = new ReentrantLock();
+  @NotNull
+  private final Condition available = lock.newCondition();
+  private double limit;
+  private int inFlight;
+  private boolean slowStart = true;
+  private long lastDecrease;
+  private double latency;
+  private double baseline;
+
+  /**
+   * Create limiter.
+   *
+   * @param minLimit Minimal concurrency.
+   * @param maxLimit Maximal concurrency.
+   */
+  public AdaptiveLimiter(int minLimit, int maxLimit) {
+    this.minLimit = Math.max(1, minLimit);
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.limit = this.minLimit;
+    this.lastDecrease = System.nanoTime() - DECREASE_INTERVAL;
+  }
+
+  @Override
+  public void acquire() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (inFlight >= (int) limit) {
+        available.await();
+      }
+      inFlight++;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void release() {
+    lock.lock();
+    try {
+      inFlight--;
+      available.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void onResponse(int status, long latency, boolean small) {
+    lock.lock();
+    try {
+      update(status, latency, small);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void update(int status, long latency, boolean small) {
+    if (status == SC_TOO_MANY_REQUESTS || status >= 500) {
+      decrease(ERROR_DECREASE, "HTTP status " + status);
+      return;
+    }
+    if (status >= 400) {
+      return;
+    }
+    if (small) {
+      this.latency = this.latency == 0 ? latency : this.latency + (latency - this.latency) * LATENCY_SMOOTHING;
+      // Baseline follows minimal latency and slowly drifts up to follow network changes.
+      baseline = (baseline == 0 || latency < baseline) ? latency : baseline + (latency - baseline) * BASELINE_DRIFT;
+      if (this.latency > baseline * LATENCY_TOLERANCE) {
+        decrease(LATENCY_DECREASE, "latency " + TimeUnit.NANOSECONDS.toMillis((long) this.latency) + " ms");
+        return;
+      }
+    }
+    increase();
+  }
+
+  private void increase() {
+    // Don't grow limit which is not used.
+    if (inFlight * 2 < (int) limit) {
+      return;
+    }
+    final double oldLimit = limit;
+    limit = Math.min(maxLimit, slowStart ? limit + 1 : limit + 1 / limit);
+    if ((int) limit > (int) oldLimit) {
+      available.signalAll();
+    }
+  }
+
+  private void decrease(double factor, @NotNull String reason) {
+    final long now = System.nanoTime();
+    // Single overload causes many failures: react on them once.
+    if (now - lastDecrease < DECREASE_INTERVAL) {
+      return;
+    }
+    lastDecrease = now;
+    slowStart = false;
+    final int oldLimit = (int) limit;
+    limit = Math.max(minLimit, limit * factor);
+    if ((int) limit != oldLimit) {
+      log.info("Upload concurrency decreased: {} -> {} ({})", oldLimit, (int) limit, reason);
+    }
+  }
+
+  /**
+   * @return Current concurrency limit.
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return Current running task count.
+   */
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
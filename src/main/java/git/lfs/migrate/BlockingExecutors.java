@@ -0,0 +1,167 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Executors for blocking I/O tasks.
+ * <p>
+ * On JDK 21+ tasks can be executed on virtual threads with concurrency capped by semaphore instead of
+ * pool size. Virtual thread executor is created by reflection, so fixed platform thread pool is used
+ * as fallback on older JDKs.
+ */
+public final class BlockingExecutors {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(BlockingExecutors.class);
+  @Nullable
+  private static final Method newVirtualThreadPerTaskExecutor = findVirtualThreadFactory();
+  private static volatile boolean virtual = false;
+
+  private BlockingExecutors() {
+  }
+
+  @Nullable
+  private static Method findVirtualThreadFactory() {
+    try {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return True if current JVM supports virtual threads.
+   */
+  public static boolean isVirtualSupported() {
+    return newVirtualThreadPerTaskExecutor != null;
+  }
+
+  /**
+   * Enable virtual threads for executors created after this call.
+   *
+   * @param enable Enable virtual threads.
+   * @return True if virtual threads are used.
+   */
+  public static boolean setVirtual(boolean enable) {
+    if (enable && !isVirtualSupported()) {
+      log.warn("Virtual threads require JDK 21 or later: fixed thread pools are used");
+    }
+    virtual = enable && isVirtualSupported();
+    return virtual;
+  }
+
+  /**
+   * Create executor for blocking tasks.
+   *
+   * @param concurrency Maximum concurrently running task count.
+   * @return Executor.
+   */
+  @NotNull
+  public static ExecutorService newBlockingPool(int concurrency) {
+    if (virtual && newVirtualThreadPerTaskExecutor != null) {
+      try {
+        final Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        return limit((ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null), new Limiter() {
+          @Override
+          public void acquire() throws InterruptedException {
+            permits.acquire();
+          }
+
+          @Override
+          public void release() {
+            permits.release();
+          }
+        });
+      } catch (IllegalAccessException | InvocationTargetException e) {
+        log.warn("Can't create virtual thread executor: fixed thread pool is used", e);
+      }
+    }
+    return Executors.newFixedThreadPool(concurrency);
+  }
+
+  /**
+   * Wrap executor with concurrency limiter. Tasks waiting for permit are parked on executor threads.
+   *
+   * @param executor Executor.
+   * @param limiter  Concurrency limiter.
+   * @return Executor with limited concurrency.
+   */
+  @NotNull
+  public static ExecutorService limit(@NotNull ExecutorService executor, @NotNull Limiter limiter) {
+    return new BoundedExecutor(executor, limiter);
+  }
+
+  /**
+   * Concurrency limiter.
+   */
+  public interface Limiter {
+    void acquire() throws InterruptedException;
+
+    void release();
+  }
+
+  private static final class BoundedExecutor extends AbstractExecutorService {
+    @NotNull
+    private final ExecutorService executor;
+    @NotNull
+    private final Limiter permits;
+
+    private BoundedExecutor(@NotNull ExecutorService executor, @NotNull Limiter permits) {
+      this.executor = executor;
+      this.permits = permits;
+    }
+
+    @Override
+    public void execute(@NotNull Runnable command) {
+      executor.execute(() -> {
+        try {
+          permits.acquire();
+        } catch (InterruptedException e) {
+          if (command instanceof Future) {
+            ((Future<?>) command).cancel(false);
+          }
+          Thread.currentThread().interrupt();
+          return;
+        }
+        try {
+          command.run();
+        } finally {
+          permits.release();
+        }
+      });
+    }
+
+    @Override
+    public void shutdown() {
+      executor.shutdown();
+    }
+
+    @NotNull
+    @Override
+    public List<Runnable> shutdownNow() {
+      return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+      return executor.awaitTermination(timeout, unit);
+    }
+  }
+}
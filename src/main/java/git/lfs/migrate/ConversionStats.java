@@ -0,0 +1,131 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LFS conversion byte counters.
+ * <p>
+ * Counters are striped, so they can be updated from many threads without contention.
+ * Source read time includes object lookup, delta resolving and inflating: summary read time of all threads
+ * close to elapsed time multiplied by thread count means that source reading is the bottleneck.
+ */
+public class ConversionStats {
+  @NotNull
+  private final LongAdder inflated = new LongAdder();
+  @NotNull
+  private final LongAdder written = new LongAdder();
+  @NotNull
+  private final LongAdder expected = new LongAdder();
+  @NotNull
+  private final LongAdder sourceReads = new LongAdder();
+  @NotNull
+  private final LongAdder sourceReadNanos = new LongAdder();
+
+  /**
+   * @return Bytes read from source blobs.
+   */
+  public long getInflated() {
+    return inflated.sum();
+  }
+
+  /**
+   * @return Bytes written to local LFS storage or archive.
+   */
+  public long getWritten() {
+    return written.sum();
+  }
+
+  /**
+   * @return Size of discovered source blobs which are converted to LFS objects.
+   */
+  public long getExpected() {
+    return expected.sum();
+  }
+
+  /**
+   * @return Source blobs opened.
+   */
+  public long getSourceReads() {
+    return sourceReads.sum();
+  }
+
+  /**
+   * @return Summary time of source blob reading in nanoseconds.
+   */
+  public long getSourceReadNanos() {
+    return sourceReadNanos.sum();
+  }
+
+  public void addInflated(long bytes) {
+    inflated.add(bytes);
+  }
+
+  public void addWritten(long bytes) {
+    written.add(bytes);
+  }
+
+  public void addExpected(long bytes) {
+    expected.add(bytes);
+  }
+
+  /**
+   * Open source blob with read time counting.
+   */
+  @NotNull
+  public ObjectLoader open(@NotNull ObjectReader reader, @NotNull AnyObjectId id, int typeHint) throws IOException {
+    final long time = System.nanoTime();
+    try {
+      return reader.open(id, typeHint);
+    } finally {
+      sourceReads.increment();
+      sourceReadNanos.add(System.nanoTime() - time);
+    }
+  }
+
+  /**
+   * Wrap source blob stream for counting inflated bytes and read time.
+   */
+  @NotNull
+  public InputStream countInflated(@NotNull InputStream stream) {
+    return new FilterInputStream(stream) {
+      @Override
+      public int read() throws IOException {
+        final long time = System.nanoTime();
+        final int result = super.read();
+        sourceReadNanos.add(System.nanoTime() - time);
+        if (result >= 0) {
+          inflated.increment();
+        }
+        return result;
+      }
+
+      @Override
+      public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        final long time = System.nanoTime();
+        final int read = super.read(b, off, len);
+        sourceReadNanos.add(System.nanoTime() - time);
+        if (read > 0) {
+          inflated.add(read);
+        }
+        return read;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        final long time = System.nanoTime();
+        final long skipped = super.skip(n);
+        sourceReadNanos.add(System.nanoTime() - time);
+        inflated.add(skipped);
+        return skipped;
+      }
+    };
+  }
+}
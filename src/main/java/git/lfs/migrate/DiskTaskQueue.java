@@ -0,0 +1,120 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * FIFO task queue which keeps only head and tail chunks in memory. Other chunks are written to disk segments.
+ */
+public class DiskTaskQueue implements TaskQueue, AutoCloseable {
+  @NotNull
+  private final Path basePath;
+  @NotNull
+  private final String name;
+  private final int chunkSize;
+  @NotNull
+  private final Deque<Path> segments = new ArrayDeque<>();
+  @NotNull
+  private Deque<TaskKey> head = new ArrayDeque<>();
+  @NotNull
+  private Deque<TaskKey> tail = new ArrayDeque<>();
+  private long size;
+  private long segmentIndex;
+
+  /**
+   * Create queue.
+   *
+   * @param basePath  Directory for segment files.
+   * @param name      Segment file name prefix.
+   * @param chunkSize Task count in one segment.
+   */
+  public DiskTaskQueue(@NotNull Path basePath, @NotNull String name, int chunkSize) {
+    this.basePath = basePath;
+    this.name = name;
+    this.chunkSize = chunkSize;
+  }
+
+  @Override
+  public synchronized void add(@NotNull TaskKey taskKey) {
+    tail.add(taskKey);
+    size++;
+    if (tail.size() >= chunkSize) {
+      final Path segment = basePath.resolve(name + "-" + (segmentIndex++));
+      try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment)))) {
+        stream.writeInt(tail.size());
+        for (TaskKey key : tail) {
+          TaskKeyCodec.write(stream, key);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      segments.add(segment);
+      tail = new ArrayDeque<>();
+    }
+  }
+
+  @Nullable
+  @Override
+  public synchronized TaskKey poll() {
+    if (head.isEmpty()) {
+      final Path segment = segments.poll();
+      if (segment != null) {
+        head = readSegment(segment);
+      } else {
+        final Deque<TaskKey> swap = head;
+        head = tail;
+        tail = swap;
+      }
+    }
+    final TaskKey result = head.poll();
+    if (result != null) {
+      size--;
+    }
+    return result;
+  }
+
+  @NotNull
+  private static Deque<TaskKey> readSegment(@NotNull Path segment) {
+    try {
+      try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+        final int count = stream.readInt();
+        final Deque<TaskKey> result = new ArrayDeque<>(count);
+        for (int i = 0; i < count; ++i) {
+          result.add(TaskKeyCodec.read(stream));
+        }
+        return result;
+      } finally {
+        Files.delete(segment);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public synchronized long size() {
+    return size;
+  }
+
+  @Override
+  public synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    for (Path segment : segments) {
+      Files.deleteIfExists(segment);
+    }
+    segments.clear();
+    head.clear();
+    tail.clear();
+    size = 0;
+  }
+}
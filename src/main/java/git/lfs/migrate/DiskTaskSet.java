@@ -0,0 +1,208 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Visited task set backed by memory-mapped hash table with in-memory Bloom filter in front.
+ * <p>
+ * Keys are stored as fixed size records (see {@link TaskKeyCodec#fingerprint(TaskKey)}) without object
+ * references, so set supports only adding and checking elements. Table is split to independently locked segments.
+ */
+public class DiskTaskSet implements TaskSet, AutoCloseable {
+  private static final int SEGMENT_BITS = 6;
+  private static final int INITIAL_CAPACITY = 1 << 12;
+  private static final int RECORD_SIZE = TaskKeyCodec.FINGERPRINT_LONGS * 8;
+  private static final int BLOOM_HASHES = 3;
+
+  @NotNull
+  private final Path basePath;
+  @NotNull
+  private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+  @NotNull
+  private final AtomicLong size = new AtomicLong();
+
+  /**
+   * Create set.
+   *
+   * @param basePath   Directory for table files.
+   * @param bloomBytes Bloom filter memory size.
+   */
+  public DiskTaskSet(@NotNull Path basePath, long bloomBytes) throws IOException {
+    this.basePath = basePath;
+    final long segmentBits = Long.highestOneBit(Math.max(64, bloomBytes * 8 / segments.length));
+    for (int i = 0; i < segments.length; ++i) {
+      segments[i] = new Segment(i, (int) Math.min(segmentBits, 1L << 30));
+    }
+  }
+
+  @Override
+  public boolean add(@NotNull TaskKey key) {
+    final long[] record = TaskKeyCodec.fingerprint(key);
+    // Object id part of fingerprint is already uniformly distributed.
+    final long hash = record[1] ^ record[3] ^ record[0];
+    try {
+      if (segments[(int) (hash >>> (64 - SEGMENT_BITS))].add(record, hash)) {
+        size.incrementAndGet();
+        return true;
+      }
+      return false;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public boolean contains(@NotNull TaskKey key) {
+    final long[] record = TaskKeyCodec.fingerprint(key);
+    final long hash = record[1] ^ record[3] ^ record[0];
+    return segments[(int) (hash >>> (64 - SEGMENT_BITS))].contains(record, hash);
+  }
+
+  @Override
+  public long size() {
+    return size.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (Segment segment : segments) {
+      segment.close();
+    }
+  }
+
+  private final class Segment {
+    private final int index;
+    @NotNull
+    private final long[] bloom;
+    private final int bloomMask;
+    private MappedByteBuffer table;
+    private Path file;
+    private int capacity;
+    private int count;
+    private int generation;
+
+    private Segment(int index, int bloomBits) throws IOException {
+      this.index = index;
+      this.bloom = new long[Math.max(1, bloomBits / 64)];
+      this.bloomMask = bloom.length * 64 - 1;
+      this.table = createTable(INITIAL_CAPACITY);
+    }
+
+    @NotNull
+    private MappedByteBuffer createTable(int newCapacity) throws IOException {
+      if ((long) newCapacity * RECORD_SIZE > Integer.MAX_VALUE) {
+        throw new IOException("Visited set segment is too large: " + newCapacity);
+      }
+      file = basePath.resolve("visited-" + index + "-" + (generation++));
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) newCapacity * RECORD_SIZE);
+        capacity = newCapacity;
+        return buffer;
+      }
+    }
+
+    private synchronized boolean contains(@NotNull long[] record, long hash) {
+      return mightContain(hash) && table.getLong(find(table, capacity, record, hash)) != 0;
+    }
+
+    private synchronized boolean add(@NotNull long[] record, long hash) throws IOException {
+      if (mightContain(hash)) {
+        final int offset = find(table, capacity, record, hash);
+        if (table.getLong(offset) != 0) {
+          return false;
+        }
+      }
+      for (int i = 0; i < BLOOM_HASHES; ++i) {
+        final int bit = bloomBit(hash, i);
+        bloom[bit >>> 6] |= 1L << bit;
+      }
+      if ((count + 1) * 2 > capacity) {
+        grow();
+      }
+      put(table, find(table, capacity, record, hash), record);
+      count++;
+      return true;
+    }
+
+    private boolean mightContain(long hash) {
+      for (int i = 0; i < BLOOM_HASHES; ++i) {
+        final int bit = bloomBit(hash, i);
+        if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int bloomBit(long hash, int i) {
+      return (int) ((hash >>> (i * 20)) ^ (hash >>> 61 - i)) & bloomMask;
+    }
+
+    private void grow() throws IOException {
+      final MappedByteBuffer oldTable = table;
+      final int oldCapacity = capacity;
+      final Path oldFile = file;
+      final MappedByteBuffer newTable = createTable(oldCapacity * 2);
+      final long[] record = new long[TaskKeyCodec.FINGERPRINT_LONGS];
+      for (int slot = 0; slot < oldCapacity; ++slot) {
+        final int offset = slot * RECORD_SIZE;
+        if (oldTable.getLong(offset) == 0) continue;
+        for (int i = 0; i < record.length; ++i) {
+          record[i] = oldTable.getLong(offset + i * 8);
+        }
+        final long hash = record[1] ^ record[3] ^ record[0];
+        put(newTable, find(newTable, capacity, record, hash), record);
+      }
+      table = newTable;
+      // Mapped buffer is released by GC, file is already unlinked.
+      Files.delete(oldFile);
+    }
+
+    /**
+     * Find record or empty slot offset with linear probing.
+     */
+    private int find(@NotNull MappedByteBuffer buffer, int tableCapacity, @NotNull long[] record, long hash) {
+      int slot = (int) hash & (tableCapacity - 1);
+      while (true) {
+        final int offset = slot * RECORD_SIZE;
+        final long first = buffer.getLong(offset);
+        if (first == 0) {
+          return offset;
+        }
+        if (first == record[0]) {
+          boolean equals = true;
+          for (int i = 1; i < record.length; ++i) {
+            if (buffer.getLong(offset + i * 8) != record[i]) {
+              equals = false;
+              break;
+            }
+          }
+          if (equals) {
+            return offset;
+          }
+        }
+        slot = (slot + 1) & (tableCapacity - 1);
+      }
+    }
+
+    private void put(@NotNull MappedByteBuffer buffer, int offset, @NotNull long[] record) {
+      for (int i = 0; i < record.length; ++i) {
+        buffer.putLong(offset + i * 8, record[i]);
+      }
+    }
+
+    private synchronized void close() throws IOException {
+      table = null;
+      Files.deleteIfExists(file);
+    }
+  }
+}
@@ -0,0 +1,468 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.transport.PackParser;
+import org.eclipse.jgit.util.IO;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Object inserter writing git fast-import stream instead of repository objects.
+ * <p>
+ * Blobs are written as is and referenced by id, trees are kept in memory only for computing file changes
+ * of commits against first parent, commits are written with marks. Commits must be inserted after their
+ * parents (see {@link StreamingConverter}), commits without parents are written to scratch branch after reset.
+ * <p>
+ * Objects of destination repository are not written, so {@link #newReader()} is the only way to check whether object
+ * is already written to stream: blob with known id must be checked before insert, because large blobs are streamed
+ * and their ids are known only after write.
+ */
+public class FastImportWriter extends ObjectInserter {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(FastImportWriter.class);
+  @NotNull
+  private static final String SCRATCH_REF = "refs/git-lfs-migrate/import";
+  /**
+   * Maximum blob size for in-memory duplicate check (larger blobs are streamed).
+   */
+  private static final int INLINE_BLOB_SIZE = 1024 * 1024;
+
+  @NotNull
+  private final OutputStream output;
+  // Blobs written to stream.
+  @NotNull
+  private final Set<ObjectId> blobs = new HashSet<>();
+  // Converted trees for file changes.
+  @NotNull
+  private final Map<ObjectId, byte[]> trees = new HashMap<>();
+  // Commit marks.
+  @NotNull
+  private final Map<ObjectId, Integer> marks = new HashMap<>();
+  // Root trees of commits for file changes of their children.
+  @NotNull
+  private final Map<ObjectId, ObjectId> commitTrees = new HashMap<>();
+  // Annotated tag names.
+  @NotNull
+  private final Map<ObjectId, String> tags = new HashMap<>();
+
+  public FastImportWriter(@NotNull OutputStream output) throws IOException {
+    this.output = output;
+    // Truncated stream (without final done command) is rejected by fast-import.
+    write("feature done\n");
+  }
+
+  @NotNull
+  @Override
+  public ObjectId insert(int type, long length, @NotNull InputStream in) throws IOException {
+    if (type == Constants.OBJ_BLOB && length > INLINE_BLOB_SIZE) {
+      return writeBlob(length, in);
+    }
+    final byte[] data = new byte[(int) length];
+    IO.readFully(in, data, 0, data.length);
+    final ObjectId id = idFor(type, data);
+    switch (type) {
+      case Constants.OBJ_BLOB:
+        if (blobs.add(id)) {
+          write("blob\ndata " + data.length + "\n");
+          output.write(data);
+          write("\n");
+        }
+        break;
+      case Constants.OBJ_TREE:
+        trees.put(id, data);
+        break;
+      case Constants.OBJ_COMMIT:
+        if (!marks.containsKey(id)) {
+          writeCommit(id, data);
+        }
+        break;
+      case Constants.OBJ_TAG:
+        if (!tags.containsKey(id)) {
+          writeTag(id, data);
+        }
+        break;
+      default:
+        throw new IOException("Unexpected object type: " + type);
+    }
+    return id;
+  }
+
+  @NotNull
+  private ObjectId writeBlob(long length, @NotNull InputStream in) throws IOException {
+    final MessageDigest md = digest();
+    md.update(Constants.encodedTypeString(Constants.OBJ_BLOB));
+    md.update((byte) ' ');
+    md.update(Constants.encodeASCII(length));
+    md.update((byte) 0);
+    write("blob\ndata " + length + "\n");
+    final byte[] buffer = buffer();
+    long remaining = length;
+    while (remaining > 0) {
+      final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      if (read <= 0) {
+        throw new IOException("Unexpected end of blob stream");
+      }
+      md.update(buffer, 0, read);
+      output.write(buffer, 0, read);
+      remaining -= read;
+    }
+    write("\n");
+    final ObjectId id = ObjectId.fromRaw(md.digest());
+    blobs.add(id);
+    return id;
+  }
+
+  private void writeCommit(@NotNull ObjectId id, @NotNull byte[] data) throws IOException {
+    ObjectId tree = null;
+    final List<ObjectId> parents = new ArrayList<>();
+    final List<String> headers = new ArrayList<>();
+    int ptr = 0;
+    while (ptr < data.length && data[ptr] != '\n') {
+      final int end = RawParseUtils.nextLF(data, ptr);
+      final String line = new String(data, ptr, end - 1 - ptr, StandardCharsets.ISO_8859_1);
+      if (line.startsWith("tree ")) {
+        tree = ObjectId.fromString(line.substring(5));
+      } else if (line.startsWith("parent ")) {
+        final ObjectId parent = ObjectId.fromString(line.substring(7));
+        if (!marks.containsKey(parent)) {
+          throw new IOException("Parent of commit " + id.name() + " is not written to fast-import stream: " + parent.name());
+        }
+        parents.add(parent);
+      } else if (line.startsWith("author ") || line.startsWith("committer ") || line.startsWith("encoding ")) {
+        headers.add(line);
+      } else {
+        throw new IOException("Unsupported header of commit " + id.name() + ": " + line);
+      }
+      ptr = end;
+    }
+    if (tree == null) {
+      throw new IOException("Commit without tree: " + id.name());
+    }
+    final int mark = marks.size() + 1;
+    if (parents.isEmpty()) {
+      write("reset " + SCRATCH_REF + "\n");
+    }
+    write("commit " + SCRATCH_REF + "\nmark :" + mark + "\n");
+    for (String header : headers) {
+      write(header + "\n");
+    }
+    writeData(data, Math.min(ptr + 1, data.length));
+    for (int i = 0; i < parents.size(); ++i) {
+      write((i == 0 ? "from :" : "merge :") + marks.get(parents.get(i)) + "\n");
+    }
+    // Commit starts from tree of first parent.
+    final ObjectId parentTree = parents.isEmpty() ? null : commitTrees.get(parents.get(0));
+    if (!parents.isEmpty() && parentTree == null) {
+      throw new IOException("Tree of parent commit is not available for commit: " + id.name());
+    }
+    writeChanges(parentTree, tree, "");
+    write("\n");
+    marks.put(id.copy(), mark);
+    commitTrees.put(id.copy(), tree);
+  }
+
+  private void writeTag(@NotNull ObjectId id, @NotNull byte[] data) throws IOException {
+    ObjectId object = null;
+    String name = null;
+    String tagger = null;
+    int ptr = 0;
+    while (ptr < data.length && data[ptr] != '\n') {
+      final int end = RawParseUtils.nextLF(data, ptr);
+      final String line = new String(data, ptr, end - 1 - ptr, StandardCharsets.ISO_8859_1);
+      if (line.startsWith("object ")) {
+        object = ObjectId.fromString(line.substring(7));
+      } else if (line.startsWith("tag ")) {
+        name = line.substring(4);
+      } else if (line.startsWith("tagger ")) {
+        tagger = line;
+      }
+      ptr = end;
+    }
+    final Integer mark = object == null ? null : marks.get(object);
+    if (mark == null || name == null) {
+      log.warn("Tag {} doesn't point to converted commit: skipped in fast-import stream", id.name());
+      return;
+    }
+    write("tag " + name + "\nfrom :" + mark + "\n");
+    if (tagger != null) {
+      write(tagger + "\n");
+    }
+    writeData(data, Math.min(ptr + 1, data.length));
+    tags.put(id.copy(), name);
+  }
+
+  /**
+   * Write file changes between converted trees.
+   *
+   * @param oldTree Old tree (null for empty tree).
+   * @param newTree New tree.
+   * @param prefix  Path prefix.
+   */
+  private void writeChanges(@Nullable ObjectId oldTree, @NotNull ObjectId newTree, @NotNull String prefix) throws IOException {
+    if (newTree.equals(oldTree)) {
+      return;
+    }
+    final Map<String, TreeEntry> oldEntries = new HashMap<>();
+    if (oldTree != null) {
+      for (TreeEntry entry : getEntries(oldTree)) {
+        oldEntries.put(entry.name, entry);
+      }
+    }
+    final List<TreeEntry> newEntries = getEntries(newTree);
+    final Set<String> names = new HashSet<>();
+    for (TreeEntry entry : newEntries) {
+      names.add(entry.name);
+    }
+    // Deletions and type changes first: type change replaces file with directory or vice versa.
+    for (TreeEntry oldEntry : oldEntries.values()) {
+      if (!names.contains(oldEntry.name)) {
+        write("D " + quote(prefix + oldEntry.name) + "\n");
+      }
+    }
+    for (TreeEntry entry : newEntries) {
+      final TreeEntry oldEntry = oldEntries.get(entry.name);
+      if (oldEntry != null && oldEntry.isTree() != entry.isTree()) {
+        write("D " + quote(prefix + entry.name) + "\n");
+      }
+    }
+    for (TreeEntry entry : newEntries) {
+      final TreeEntry oldEntry = oldEntries.get(entry.name);
+      if (oldEntry != null && oldEntry.mode == entry.mode && oldEntry.id.equals(entry.id)) {
+        continue;
+      }
+      if (entry.isTree()) {
+        writeChanges(oldEntry != null && oldEntry.isTree() ? oldEntry.id : null, entry.id, prefix + entry.name + "/");
+      } else {
+        write("M " + Integer.toOctalString(entry.mode) + " " + entry.id.name() + " " + quote(prefix + entry.name) + "\n");
+      }
+    }
+  }
+
+  @NotNull
+  private List<TreeEntry> getEntries(@NotNull ObjectId treeId) throws IOException {
+    final byte[] data = trees.get(treeId);
+    if (data == null) {
+      throw new IOException("Converted tree is not available: " + treeId.name());
+    }
+    final List<TreeEntry> result = new ArrayList<>();
+    int ptr = 0;
+    while (ptr < data.length) {
+      int mode = 0;
+      while (data[ptr] != ' ') {
+        mode = (mode << 3) + (data[ptr++] - '0');
+      }
+      final int nameStart = ++ptr;
+      while (data[ptr] != 0) {
+        ptr++;
+      }
+      // Latin-1 keeps raw path bytes.
+      final String name = new String(data, nameStart, ptr - nameStart, StandardCharsets.ISO_8859_1);
+      ptr++;
+      result.add(new TreeEntry(mode, name, ObjectId.fromRaw(data, ptr)));
+      ptr += Constants.OBJECT_ID_LENGTH;
+    }
+    return result;
+  }
+
+  /**
+   * Quote path in C style if it can't be written as is.
+   */
+  @NotNull
+  static String quote(@NotNull String path) {
+    if (path.indexOf('\n') < 0 && !path.startsWith("\"")) {
+      return path;
+    }
+    final StringBuilder result = new StringBuilder("\"");
+    for (char c : path.toCharArray()) {
+      switch (c) {
+        case '\n':
+          result.append("\\n");
+          break;
+        case '"':
+        case '\\':
+          result.append('\\').append(c);
+          break;
+        default:
+          result.append(c);
+      }
+    }
+    return result.append('"').toString();
+  }
+
+  /**
+   * Keep converted trees only for commits which can still be parents.
+   *
+   * @param commits Converted commits with not converted children.
+   */
+  public void retain(@NotNull Collection<ObjectId> commits) throws IOException {
+    commitTrees.keySet().retainAll(new HashSet<>(commits));
+    final Set<ObjectId> alive = new HashSet<>();
+    final Deque<ObjectId> queue = new ArrayDeque<>(commitTrees.values());
+    while (!queue.isEmpty()) {
+      final ObjectId treeId = queue.pop();
+      if (trees.containsKey(treeId) && alive.add(treeId)) {
+        for (TreeEntry entry : getEntries(treeId)) {
+          if (entry.isTree()) {
+            queue.add(entry.id);
+          }
+        }
+      }
+    }
+    trees.keySet().retainAll(alive);
+  }
+
+  /**
+   * Write refs and finish stream.
+   *
+   * @param refs      Source refs.
+   * @param converted Conversion result for ref objects.
+   */
+  public void finish(@NotNull Map<String, Ref> refs, @NotNull Map<TaskKey, ObjectId> converted) throws IOException {
+    int written = 0;
+    for (Ref ref : refs.values()) {
+      if (ref.isSymbolic() || ref.getObjectId() == null) continue;
+      final ObjectId newId = converted.get(new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, ref.getObjectId()));
+      final Integer mark = newId == null ? null : marks.get(newId);
+      final String tag = newId == null ? null : tags.get(newId);
+      if (mark != null) {
+        write("reset " + ref.getName() + "\nfrom :" + mark + "\n\n");
+      } else if (tag != null && ref.getName().equals(Constants.R_TAGS + new String(tag.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8))) {
+        // Ref is created by tag command.
+        log.debug("  tag ref: {}", ref.getName());
+      } else {
+        log.warn("  skip ref not supported by fast-import stream: {} ({})", ref.getName(), ref.getObjectId().name());
+        continue;
+      }
+      written++;
+    }
+    write("reset " + SCRATCH_REF + "\nfrom " + ObjectId.zeroId().name() + "\n\ndone\n");
+    output.flush();
+    log.info("  fast-import stream: {} blobs, {} commits, {} tags, {} refs", blobs.size(), marks.size(), tags.size(), written);
+  }
+
+  private void writeData(@NotNull byte[] data, int offset) throws IOException {
+    write("data " + (data.length - offset) + "\n");
+    output.write(data, offset, data.length - offset);
+    write("\n");
+  }
+
+  /**
+   * Write text with raw bytes of object headers and paths (decoded as Latin-1).
+   */
+  private void write(@NotNull String text) throws IOException {
+    output.write(text.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * Pack parsing is not supported: pack objects can be in any order, but fast-import stream needs commits after
+   * their parents and their trees before them.
+   */
+  @Override
+  public PackParser newPackParser(InputStream in) {
+    throw new UnsupportedOperationException("Pack can't be written to fast-import stream");
+  }
+
+  /**
+   * Create reader of objects written to stream.
+   * <p>
+   * Reader knows all written objects, but only trees are kept in memory and can be opened.
+   */
+  @NotNull
+  @Override
+  public ObjectReader newReader() {
+    return new Reader();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    output.flush();
+  }
+
+  @Override
+  public void close() {
+    try {
+      output.close();
+    } catch (IOException e) {
+      log.warn("Can't close fast-import stream", e);
+    }
+  }
+
+  private final class Reader extends ObjectReader {
+    @NotNull
+    @Override
+    public ObjectReader newReader() {
+      return new Reader();
+    }
+
+    @NotNull
+    @Override
+    public Collection<ObjectId> resolve(@NotNull AbbreviatedObjectId id) {
+      final Set<ObjectId> result = new HashSet<>();
+      for (Collection<ObjectId> ids : Arrays.asList(blobs, trees.keySet(), marks.keySet(), tags.keySet())) {
+        for (ObjectId objectId : ids) {
+          if (id.prefixCompare(objectId) == 0) {
+            result.add(objectId);
+          }
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public boolean has(@NotNull AnyObjectId objectId, int typeHint) {
+      return blobs.contains(objectId) || trees.containsKey(objectId) || marks.containsKey(objectId) || tags.containsKey(objectId);
+    }
+
+    @NotNull
+    @Override
+    public ObjectLoader open(@NotNull AnyObjectId objectId, int typeHint) throws IOException {
+      final byte[] data = trees.get(objectId);
+      if (data != null && (typeHint == OBJ_ANY || typeHint == Constants.OBJ_TREE)) {
+        return new ObjectLoader.SmallObject(Constants.OBJ_TREE, data);
+      }
+      if (has(objectId, typeHint)) {
+        throw new IOException("Object is written to fast-import stream and can't be read: " + objectId.name());
+      }
+      throw new MissingObjectException(objectId.copy(), typeHint);
+    }
+
+    @NotNull
+    @Override
+    public Set<ObjectId> getShallowCommits() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static final class TreeEntry {
+    private final int mode;
+    @NotNull
+    private final String name;
+    @NotNull
+    private final ObjectId id;
+
+    private TreeEntry(int mode, @NotNull String name, @NotNull ObjectId id) {
+      this.mode = mode;
+      this.name = name;
+      this.id = id;
+    }
+
+    private boolean isTree() {
+      return (mode & FileMode.TYPE_MASK) == FileMode.TYPE_TREE;
+    }
+  }
+}
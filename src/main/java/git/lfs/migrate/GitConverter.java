@@ -11,37 +11,53 @@ import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.mapdb.DB;
-import org.mapdb.HTreeMap;
 import org.mapdb.Serializer;
 import org.mapdb.serializer.SerializerJava;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.bozaro.gitlfs.client.io.StreamProvider;
 import ru.bozaro.gitlfs.common.data.Meta;
 import ru.bozaro.gitlfs.pointer.Pointer;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 /**
  * Converter for git objects.
  * Created by bozaro on 09.06.15.
  */
-public class GitConverter {
+public class GitConverter implements AutoCloseable {
   @NotNull
   private static final Logger log = LoggerFactory.getLogger(GitConverter.class);
   @NotNull
-  private static final String GIT_ATTRIBUTES = ".gitattributes";
+  static final String GIT_ATTRIBUTES = ".gitattributes";
+  @NotNull
+  private static final PathMatcher[] NO_MATCHERS = new PathMatcher[0];
   @NotNull
   private final String[] globs;
   @NotNull
   private final PathMatcher[] matchers;
+  /**
+   * Glob matchers of visited directories by path id (see {@link #getDirMatchers(int)}).
+   */
+  @NotNull
+  private final ConcurrentMap<Integer, PathMatcher[]> dirMatchers = new ConcurrentHashMap<>();
+  /**
+   * Copied trees which were rewritten in canonical form: source tree id to written tree id (see {@link #copyTree}).
+   */
+  @NotNull
+  private final ConcurrentMap<ObjectId, ObjectId> rewrittenTrees = new ConcurrentHashMap<>();
   @NotNull
   private final DB cache;
   @NotNull
@@ -49,11 +65,44 @@ public class GitConverter {
   @NotNull
   private final Path tempPath;
   @NotNull
-  private final HTreeMap<String, MetaData> cacheMeta;
+  private final WriteBehindCache<String, MetaData> cacheMeta;
+  @NotNull
+  private final PathTrie paths = new PathTrie();
+  @Nullable
+  private final LfsArchiveWriter archive;
+  @NotNull
+  private final ConversionStats stats = new ConversionStats();
+  private final boolean checkTrees;
+  @Nullable
+  private WriteBehindCache<String, String> cacheResults;
+  @Nullable
+  private Set<Long> completedRuns;
+  @Nullable
+  private String resultPrefix;
+  private long resultRun;
+  @Nullable
+  private ObjectDatabase reuseResults;
+  @Nullable
+  private HistoryLimit historyLimit;
 
   public GitConverter(@NotNull DB cache, @NotNull Path basePath, @NotNull String[] globs) throws IOException, InvalidPatternException {
+    this(cache, basePath, globs, true);
+  }
+
+  public GitConverter(@NotNull DB cache, @NotNull Path basePath, @NotNull String[] globs, boolean checkTrees) throws IOException, InvalidPatternException {
+    this(cache, basePath, globs, checkTrees, null);
+  }
+
+  /**
+   * Create converter.
+   *
+   * @param archive LFS archive writer for local LFS objects (objects are written to lfs/objects if not defined).
+   */
+  public GitConverter(@NotNull DB cache, @NotNull Path basePath, @NotNull String[] globs, boolean checkTrees, @Nullable LfsArchiveWriter archive) throws IOException, InvalidPatternException {
     this.basePath = basePath;
     this.cache = cache;
+    this.checkTrees = checkTrees;
+    this.archive = archive;
     this.globs = globs.clone();
     this.matchers = convertGlobs(globs);
     Arrays.sort(globs);
@@ -64,15 +113,103 @@ public class GitConverter {
 
     tempPath = basePath.resolve("lfs/tmp");
     Files.createDirectories(tempPath);
-    //noinspection unchecked
-    cacheMeta = cache.<String, MetaData>hashMap("meta")
+    cacheMeta = new WriteBehindCache<>("hash-cache", cache.<String, MetaData>hashMap("meta")
+        .keySerializer(Serializer.STRING)
+        .valueSerializer(GitConverter.<MetaData>javaSerializer())
+        .createOrOpen(), cache::commit);
+  }
+
+  /**
+   * Java serialization serializer ({@link SerializerJava} is raw type).
+   */
+  @SuppressWarnings("unchecked")
+  @NotNull
+  private static <T extends Serializable> Serializer<T> javaSerializer() {
+    return new SerializerJava();
+  }
+
+  /**
+   * Write pending LFS object metadata and conversion results to cache database and stop background cache writers.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      cacheMeta.close();
+    } finally {
+      if (cacheResults != null) {
+        cacheResults.close();
+      }
+    }
+  }
+
+  /**
+   * Limit converted history: parents outside of the limit are dropped from converted commits.
+   */
+  public void setHistoryLimit(@Nullable HistoryLimit historyLimit) {
+    this.historyLimit = historyLimit;
+  }
+
+  @Nullable
+  public HistoryLimit getHistoryLimit() {
+    return historyLimit;
+  }
+
+  /**
+   * Persist tree, commit, tag and .gitattributes conversion results in cache database.
+   * <p>
+   * Conversion results depend on glob set, LFS object target and history limit, so they are stored by fingerprint
+   * of them (history limit must be set before this call).
+   * Results are written in background by batches, but reused only after {@link #completeResults()} call of the same run:
+   * objects of failed run can be incomplete (for example, not uploaded LFS objects of converted tree).
+   * Cached result is reused only if destination still contains it: objects of previous runs can be pruned by gc.
+   *
+   * @param target      LFS object target (LFS server url or local storage).
+   * @param destination Destination object database for reusing results of previous runs (null to not reuse them).
+   */
+  public void openResults(@NotNull String target, @Nullable ObjectDatabase destination) {
+    final String[] sorted = globs.clone();
+    Arrays.sort(sorted);
+    final MessageDigest md = createSha256();
+    for (String glob : sorted) {
+      md.update(glob.getBytes(StandardCharsets.UTF_8));
+      md.update((byte) 0);
+    }
+    md.update(target.getBytes(StandardCharsets.UTF_8));
+    if (historyLimit != null) {
+      md.update((byte) 0);
+      historyLimit.fingerprint(md);
+    }
+    resultPrefix = new String(Hex.encodeHex(md.digest(), true)).substring(0, 16) + ":";
+    cacheResults = new WriteBehindCache<>("result-cache", cache.<String, String>hashMap("results")
         .keySerializer(Serializer.STRING)
-        .valueSerializer(new SerializerJava())
-        .createOrOpen();
+        .valueSerializer(Serializer.STRING)
+        .createOrOpen(), cache::commit);
+    completedRuns = cache.hashSet("results.completed", Serializer.LONG).createOrOpen();
+    resultRun = cache.atomicLong("results.run").createOrOpen().incrementAndGet();
+    reuseResults = destination;
+    cache.commit();
+  }
+
+  /**
+   * Mark results of current run as reusable.
+   */
+  public void completeResults() throws IOException {
+    if (cacheResults != null && completedRuns != null) {
+      cacheResults.flush();
+      completedRuns.add(resultRun);
+      cache.commit();
+    }
   }
 
   @NotNull
   public ConvertTask convertTask(@NotNull ObjectReader reader, @NotNull TaskKey key) throws IOException {
+    if (key.getType() == TaskType.Simple || key.getType() == TaskType.Attribute) {
+      final ObjectId cached = getCachedResult(key);
+      if (cached != null) {
+        // Converted by previous run: subtree is not walked again.
+        return keepMissingTask(cached);
+      }
+    }
     switch (key.getType()) {
       case Simple: {
         if (!reader.has(key.getObjectId())) {
@@ -80,21 +217,25 @@ public class GitConverter {
         }
         final RevObject revObject = new RevWalk(reader).parseAny(key.getObjectId());
         if (revObject instanceof RevCommit) {
-          return convertCommitTask((RevCommit) revObject);
+          return cacheResult(key, convertCommitTask((RevCommit) revObject));
         }
         if (revObject instanceof RevTree) {
-          return convertTreeTask(reader, revObject, Objects.requireNonNull(key.getPath()));
+          // Tree without matching files and attributes is converted to itself.
+          if (key.getPathId() != PathTrie.ROOT && getDirMatchers(key.getPathId()).length == 0) {
+            return cacheResult(key, copyTreeTask(reader, revObject));
+          }
+          return cacheResult(key, convertTreeTask(reader, revObject, key.getPathId()));
         }
         if (revObject instanceof RevBlob) {
           return copyTask(reader, revObject);
         }
         if (revObject instanceof RevTag) {
-          return convertTagTask((RevTag) revObject);
+          return cacheResult(key, convertTagTask((RevTag) revObject));
         }
-        throw new IllegalStateException("Unsupported object type: " + key + " (" + revObject.getClass().getName() + ")");
+        throw new IllegalStateException("Unsupported object type: " + key + " at " + paths.getPath(key.getPathId()) + " (" + revObject.getClass().getName() + ")");
       }
       case Attribute:
-        return createAttributesTask(reader, key.getObjectId());
+        return cacheResult(key, createAttributesTask(reader, key.getObjectId()));
       case UploadLfs:
         return convertLfsTask(reader, key.getObjectId());
       default:
@@ -102,6 +243,63 @@ public class GitConverter {
     }
   }
 
+  @Nullable
+  private String getResultKey(@NotNull TaskKey key) {
+    if (resultPrefix == null) {
+      return null;
+    }
+    // Path trie ids are not stable between runs.
+    final String path = key.getType().needPath() ? paths.getPath(key.getPathId()) : "";
+    return resultPrefix + key.getType().name() + ":" + key.getObjectId().name() + ":" + path;
+  }
+
+  @Nullable
+  private ObjectId getCachedResult(@NotNull TaskKey key) throws IOException {
+    final ObjectDatabase destination = reuseResults;
+    if (destination == null || cacheResults == null || completedRuns == null) {
+      return null;
+    }
+    final String value = cacheResults.get(Objects.requireNonNull(getResultKey(key)));
+    if (value == null) {
+      return null;
+    }
+    final int separator = value.indexOf(' ');
+    if (!completedRuns.contains(Long.parseLong(value.substring(0, separator), 16))) {
+      return null;
+    }
+    final ObjectId id = ObjectId.fromString(value.substring(separator + 1));
+    // Object is complete if it exists: tree and commit objects are written after all their dependencies and gc prunes
+    // only objects unreachable from kept ones.
+    if (!destination.has(id)) {
+      log.debug("Cached result {} not found in destination repository: {}", id.name(), key);
+      return null;
+    }
+    return id;
+  }
+
+  @NotNull
+  private ConvertTask cacheResult(@NotNull TaskKey key, @NotNull ConvertTask task) {
+    if (cacheResults == null) {
+      return task;
+    }
+    final WriteBehindCache<String, String> results = cacheResults;
+    return new ConvertTask() {
+      @NotNull
+      @Override
+      public Iterable<TaskKey> depends() throws IOException {
+        return task.depends();
+      }
+
+      @NotNull
+      @Override
+      public ObjectId convert(@NotNull Repository dstRepo, @NotNull ObjectInserter inserter, @NotNull ConvertResolver resolver, @Nullable Uploader uploader) throws IOException {
+        final ObjectId id = task.convert(dstRepo, inserter, resolver, uploader);
+        results.put(Objects.requireNonNull(getResultKey(key)), Long.toHexString(resultRun) + " " + id.name());
+        return id;
+      }
+    };
+  }
+
   private ConvertTask keepMissingTask(@NotNull ObjectId objectId) {
     return new ConvertTask() {
       @NotNull
@@ -125,14 +323,14 @@ public class GitConverter {
       @Override
       public Iterable<TaskKey> depends() {
         return Collections.singletonList(
-            new TaskKey(TaskType.Simple, "", revObject.getObject())
+            new TaskKey(TaskType.Simple, PathTrie.ROOT, revObject.getObject())
         );
       }
 
       @NotNull
       @Override
       public ObjectId convert(@NotNull Repository dstRepo, @NotNull ObjectInserter inserter, @NotNull ConvertResolver resolver, @Nullable Uploader uploader) throws IOException {
-        final ObjectId id = resolver.resolve(TaskType.Simple, "", revObject.getObject());
+        final ObjectId id = resolver.resolve(TaskType.Simple, PathTrie.ROOT, revObject.getObject());
         final TagBuilder builder = new TagBuilder();
         builder.setMessage(revObject.getFullMessage());
         builder.setTag(revObject.getTagName());
@@ -150,10 +348,10 @@ public class GitConverter {
       @Override
       public Iterable<TaskKey> depends() {
         List<TaskKey> result = new ArrayList<>();
-        for (RevCommit parent : revObject.getParents()) {
-          result.add(new TaskKey(TaskType.Simple, "", parent));
+        for (RevCommit parent : getParents(revObject)) {
+          result.add(new TaskKey(TaskType.Simple, PathTrie.ROOT, parent));
         }
-        result.add(new TaskKey(TaskType.Simple, "", revObject.getTree()));
+        result.add(new TaskKey(TaskType.Simple, PathTrie.ROOT, revObject.getTree()));
         return result;
       }
 
@@ -166,52 +364,55 @@ public class GitConverter {
         builder.setEncoding(revObject.getEncoding());
         builder.setMessage(revObject.getFullMessage());
         // Set parents
-        for (RevCommit oldParent : revObject.getParents()) {
-          builder.addParentId(resolver.resolve(TaskType.Simple, "", oldParent));
+        for (RevCommit oldParent : getParents(revObject)) {
+          builder.addParentId(resolver.resolve(TaskType.Simple, PathTrie.ROOT, oldParent));
         }
         // Set tree
-        builder.setTreeId(resolver.resolve(TaskType.Simple, "", revObject.getTree()));
+        builder.setTreeId(resolver.resolve(TaskType.Simple, PathTrie.ROOT, revObject.getTree()));
         return inserter.insert(builder);
       }
     };
   }
 
   @NotNull
-  private ConvertTask convertTreeTask(@NotNull ObjectReader reader, @NotNull ObjectId id, @NotNull String path) {
+  private List<RevCommit> getParents(@NotNull RevCommit commit) {
+    return historyLimit == null ? Arrays.asList(commit.getParents()) : historyLimit.getParents(commit);
+  }
+
+  @NotNull
+  private ConvertTask convertTreeTask(@NotNull ObjectReader reader, @NotNull ObjectId id, int pathId) {
     return new ConvertTask() {
       @NotNull
       private List<GitTreeEntry> getEntries() throws IOException {
         final List<GitTreeEntry> entries = new ArrayList<>();
         final CanonicalTreeParser treeParser = new CanonicalTreeParser(null, reader, id);
-        boolean needAttributes = path.isEmpty();
+        final String path = paths.getPath(pathId);
+        boolean needAttributes = pathId == PathTrie.ROOT;
         while (!treeParser.eof()) {
           final FileMode fileMode = treeParser.getEntryFileMode();
+          final String name = treeParser.getEntryPathString();
           final TaskType blobTask;
-          final String pathTask;
-          if (needAttributes && treeParser.getEntryPathString().equals(GIT_ATTRIBUTES)) {
+          final int pathTask;
+          if (needAttributes && name.equals(GIT_ATTRIBUTES)) {
             blobTask = TaskType.Attribute;
-            pathTask = null;
+            pathTask = PathTrie.NONE;
             needAttributes = false;
-          } else if (isFile(fileMode) && matchFilename(path + "/" + treeParser.getEntryPathString())) {
+          } else if (isFile(fileMode) && matchFilename(path + "/" + name)) {
             blobTask = TaskType.UploadLfs;
-            pathTask = null;
+            pathTask = PathTrie.NONE;
           } else {
             blobTask = TaskType.Simple;
-            pathTask = path + "/" + treeParser.getEntryPathString();
+            pathTask = paths.child(pathId, name);
           }
-          entries.add(new GitTreeEntry(fileMode, new TaskKey(blobTask, pathTask, treeParser.getEntryObjectId()), treeParser.getEntryPathString()));
+          entries.add(new GitTreeEntry(fileMode, new TaskKey(blobTask, pathTask, treeParser.getEntryObjectId()), name));
           treeParser.next();
         }
         if (needAttributes && globs.length > 0) {
-          entries.add(new GitTreeEntry(FileMode.REGULAR_FILE, new TaskKey(TaskType.Attribute, null, ObjectId.zeroId()), GIT_ATTRIBUTES));
+          entries.add(new GitTreeEntry(FileMode.REGULAR_FILE, new TaskKey(TaskType.Attribute, PathTrie.NONE, ObjectId.zeroId()), GIT_ATTRIBUTES));
         }
         return entries;
       }
 
-      private boolean isFile(@NotNull FileMode fileMode) {
-        return (fileMode.getObjectType() == Constants.OBJ_BLOB) && ((fileMode.getBits() & FileMode.TYPE_MASK) == FileMode.TYPE_FILE);
-      }
-
       @NotNull
       @Override
       public Iterable<TaskKey> depends() throws IOException {
@@ -228,12 +429,41 @@ public class GitConverter {
         for (GitTreeEntry entry : entries) {
           treeBuilder.append(entry.getFileName(), entry.getFileMode(), resolver.resolve(entry.getTaskKey()));
         }
-        new ObjectChecker().checkTree(treeBuilder.toByteArray());
+        if (checkTrees) {
+          new ObjectChecker().checkTree(treeBuilder.toByteArray());
+        }
         return inserter.insert(treeBuilder);
       }
     };
   }
 
+  public static boolean isFile(@NotNull FileMode fileMode) {
+    return (fileMode.getObjectType() == Constants.OBJ_BLOB) && ((fileMode.getBits() & FileMode.TYPE_MASK) == FileMode.TYPE_FILE);
+  }
+
+  @NotNull
+  public static Path getLfsObjectPath(@NotNull Path basePath, @NotNull String hash) {
+    return basePath.resolve("lfs/objects/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash);
+  }
+
+  /**
+   * @return Interned paths of tree tasks.
+   */
+  @NotNull
+  public PathTrie getPaths() {
+    return paths;
+  }
+
+  @NotNull
+  public ConversionStats getStats() {
+    return stats;
+  }
+
+  @NotNull
+  public String[] getGlobs() {
+    return globs.clone();
+  }
+
   @NotNull
   private static PathMatcher[] convertGlobs(String[] globs) throws InvalidPatternException {
     final PathMatcher[] matchers = new PathMatcher[globs.length];
@@ -259,6 +489,54 @@ public class GitConverter {
     return false;
   }
 
+  /**
+   * Check if any glob can match some file under directory.
+   *
+   * @param dirPath Directory path.
+   */
+  public boolean matchDirectory(@NotNull String dirPath) {
+    if (!dirPath.startsWith("/")) {
+      throw new IllegalStateException("Unexpected directory name: " + dirPath);
+    }
+    PathMatcher[] dirMatchers = matchers;
+    for (String name : dirPath.substring(1).split("/")) {
+      dirMatchers = createChildMatchers(dirMatchers, name);
+    }
+    return dirMatchers.length > 0;
+  }
+
+  /**
+   * Get glob matchers which can match some file under directory.
+   * <p>
+   * Matcher state is derived from parent directory state by single step and kept by path id, so it is not
+   * rebuilt from full path for every tree.
+   */
+  @NotNull
+  private PathMatcher[] getDirMatchers(int pathId) {
+    if (pathId == PathTrie.ROOT) {
+      return matchers;
+    }
+    final PathMatcher[] cached = dirMatchers.get(pathId);
+    if (cached != null) {
+      return cached;
+    }
+    final PathMatcher[] result = createChildMatchers(getDirMatchers(paths.getParent(pathId)), paths.getName(pathId));
+    final PathMatcher[] prev = dirMatchers.putIfAbsent(pathId, result);
+    return prev != null ? prev : result;
+  }
+
+  @NotNull
+  private static PathMatcher[] createChildMatchers(@NotNull PathMatcher[] parent, @NotNull String name) {
+    final List<PathMatcher> result = new ArrayList<>(parent.length);
+    for (PathMatcher matcher : parent) {
+      final PathMatcher child = matcher.createChild(name, true);
+      if (child != null) {
+        result.add(child);
+      }
+    }
+    return result.isEmpty() ? NO_MATCHERS : result.toArray(new PathMatcher[result.size()]);
+  }
+
   @NotNull
   private ConvertTask convertLfsTask(@NotNull ObjectReader reader, @NotNull ObjectId id) throws IOException {
     return new ConvertTask() {
@@ -271,29 +549,129 @@ public class GitConverter {
       @NotNull
       @Override
       public ObjectId convert(@NotNull Repository dstRepo, @NotNull ObjectInserter inserter, @NotNull ConvertResolver resolver, @Nullable Uploader uploader) throws IOException {
-        final ObjectLoader loader = reader.open(id, Constants.OBJ_BLOB);
+        final ObjectLoader loader = stats.open(reader, id, Constants.OBJ_BLOB);
         // Is empty blob (see #21)?
         if (loader.getSize() == 0) {
-          if (dstRepo.hasObject(id)) return id;
+          if (hasObject(dstRepo, inserter, id)) return id;
           return copy(inserter, loader);
         }
         // Is object already converted?
         if (isLfsPointer(loader)) {
-          if (dstRepo.hasObject(id)) return id;
+          if (hasObject(dstRepo, inserter, id)) return id;
           return copy(inserter, loader);
         }
-        final String hash = (uploader == null) ? createLocalFile(id, loader) : createRemoteFile(id, loader, uploader);
-        // Create pointer.
-        StringWriter pointer = new StringWriter();
-        pointer.write("version https://git-lfs.github.com/spec/v1\n");
-        pointer.write("oid sha256:" + hash + "\n");
-        pointer.write("size " + loader.getSize() + "\n");
-
-        return inserter.insert(Constants.OBJ_BLOB, pointer.toString().getBytes(StandardCharsets.UTF_8));
+        final String hash;
+        if (uploader != null) {
+          hash = createRemoteFile(id, loader, uploader);
+        } else if (archive != null) {
+          hash = createArchiveFile(id, loader, archive);
+        } else {
+          hash = createLocalFile(id, loader);
+        }
+        return insertPointer(inserter, new Meta(hash, loader.getSize()));
       }
     };
   }
 
+  @NotNull
+  static ObjectId insertPointer(@NotNull ObjectInserter inserter, @NotNull Meta meta) throws IOException {
+    // Create pointer.
+    StringWriter pointer = new StringWriter();
+    pointer.write("version https://git-lfs.github.com/spec/v1\n");
+    pointer.write("oid sha256:" + meta.getOid() + "\n");
+    pointer.write("size " + meta.getSize() + "\n");
+
+    return inserter.insert(Constants.OBJ_BLOB, pointer.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Get cached LFS object metadata.
+   *
+   * @param id Source blob id.
+   * @return LFS object metadata (null if blob is not hashed yet).
+   */
+  @Nullable
+  Meta getCachedMeta(@NotNull ObjectId id) {
+    final MetaData cached = cacheMeta.get(id.name());
+    return cached == null ? null : new Meta(cached.oid, cached.size);
+  }
+
+  /**
+   * Put LFS object metadata to cache (it is written to cache database in background, see {@link #commitCache()}).
+   */
+  void putCachedMeta(@NotNull ObjectId id, @NotNull Meta meta) {
+    cacheMeta.put(id.name(), new MetaData(meta.getOid(), meta.getSize()));
+  }
+
+  /**
+   * Write pending LFS object metadata to cache database.
+   */
+  void commitCache() throws IOException {
+    cacheMeta.flush();
+  }
+
+  /**
+   * Calculate LFS object metadata.
+   */
+  @NotNull
+  static Meta hashLfs(@NotNull InputStream stream) throws IOException {
+    final MessageDigest md = createSha256();
+    long size = 0;
+    byte[] buffer = new byte[0x10000];
+    while (true) {
+      int read = stream.read(buffer);
+      if (read <= 0) break;
+      md.update(buffer, 0, read);
+      size += read;
+    }
+    return new Meta(new String(Hex.encodeHex(md.digest(), true)), size);
+  }
+
+  /**
+   * Store LFS object with already known metadata: upload it, append it to archive or write it to local storage.
+   *
+   * @param id       Source blob id.
+   * @param meta     LFS object metadata.
+   * @param source   Blob content.
+   * @param uploader Uploader (null for local storage).
+   */
+  void storeLfs(@NotNull ObjectId id, @NotNull Meta meta, @NotNull StreamProvider source, @Nullable Uploader uploader) throws IOException {
+    if (uploader != null) {
+      uploader.upload(id, meta);
+    } else if (archive != null) {
+      if (!archive.contains(meta.getOid())) {
+        final String hash;
+        try (InputStream stream = source.getStream()) {
+          hash = archive.append(stream, meta.getSize());
+        }
+        stats.addWritten(meta.getSize());
+        if (!hash.equals(meta.getOid())) {
+          throw new IOException("Unexpected LFS object hash for " + id.name() + ": " + hash + " (expected: " + meta.getOid() + ")");
+        }
+      }
+    } else if (!writeKnownLocalFile(meta, source)) {
+      // Replace damaged object.
+      Files.delete(getLfsObjectPath(basePath, meta.getOid()));
+      if (!writeKnownLocalFile(meta, source)) {
+        throw new IOException("Can't write LFS object: " + meta.getOid());
+      }
+    }
+  }
+
+  /**
+   * Check if object is already written to destination.
+   * <p>
+   * Objects of fast-import stream are not written to destination repository.
+   */
+  private static boolean hasObject(@NotNull Repository dstRepo, @NotNull ObjectInserter inserter, @NotNull AnyObjectId id) throws IOException {
+    if (inserter instanceof FastImportWriter) {
+      try (ObjectReader reader = inserter.newReader()) {
+        return reader.has(id);
+      }
+    }
+    return dstRepo.hasObject(id);
+  }
+
   @NotNull
   private ObjectId copy(@NotNull ObjectInserter inserter, @NotNull ObjectLoader loader) throws IOException {
     try (ObjectStream stream = loader.openStream()) {
@@ -309,7 +687,7 @@ public class GitConverter {
     long size = 0;
     if (cached == null) {
       final MessageDigest md = createSha256();
-      try (InputStream istream = loader.openStream()) {
+      try (InputStream istream = stats.countInflated(loader.openStream())) {
         byte[] buffer = new byte[0x10000];
         while (true) {
           int read = istream.read(buffer);
@@ -320,7 +698,6 @@ public class GitConverter {
       }
       hash = new String(Hex.encodeHex(md.digest(), true));
       cacheMeta.put(id.name(), new MetaData(hash, size));
-      cache.commit();
     } else {
       hash = cached.oid;
       size = cached.size;
@@ -331,11 +708,16 @@ public class GitConverter {
 
   @NotNull
   private String createLocalFile(@NotNull ObjectId id, @NotNull ObjectLoader loader) throws IOException {
+    final MetaData cached = cacheMeta.get(id.name());
+    // Hash is already known: write object without temporary file.
+    if (cached != null && writeKnownLocalFile(new Meta(cached.oid, cached.size), () -> stats.countInflated(loader.openStream()))) {
+      return cached.oid;
+    }
     // Create LFS stream.
     final Path tmpFile = tempPath.resolve(UUID.randomUUID().toString());
     final MessageDigest md = createSha256();
-    int size = 0;
-    try (InputStream istream = loader.openStream();
+    long size = 0;
+    try (InputStream istream = stats.countInflated(loader.openStream());
          OutputStream ostream = Files.newOutputStream(tmpFile)) {
       byte[] buffer = new byte[0x10000];
       while (true) {
@@ -346,13 +728,13 @@ public class GitConverter {
         size += read;
       }
     }
+    stats.addWritten(size);
     final String hash = new String(Hex.encodeHex(md.digest(), true));
-    cacheMeta.putIfAbsent(id.name(), new MetaData(hash, size));
-    cache.commit();
+    cacheMeta.put(id.name(), new MetaData(hash, size));
     // Rename file.
-    final Path lfsFile = basePath.resolve("lfs/objects/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash);
+    final Path lfsFile = getLfsObjectPath(basePath, hash);
     Files.createDirectories(lfsFile.getParent());
-    if (Files.exists(lfsFile)) {
+    if (Files.exists(lfsFile) && Files.size(lfsFile) == size) {
       try {
         Files.delete(tmpFile);
       } catch (IOException e) {
@@ -365,7 +747,76 @@ public class GitConverter {
   }
 
   @NotNull
-  private static MessageDigest createSha256() {
+  private String createArchiveFile(@NotNull ObjectId id, @NotNull ObjectLoader loader, @NotNull LfsArchiveWriter archive) throws IOException {
+    final MetaData cached = cacheMeta.get(id.name());
+    if (cached != null && archive.contains(cached.oid)) {
+      return cached.oid;
+    }
+    final String hash;
+    try (InputStream stream = stats.countInflated(loader.openStream())) {
+      hash = archive.append(stream, loader.getSize());
+    }
+    stats.addWritten(loader.getSize());
+    if (cached == null) {
+      cacheMeta.put(id.name(), new MetaData(hash, loader.getSize()));
+    }
+    return hash;
+  }
+
+  /**
+   * Write local LFS object with known hash.
+   *
+   * @return False if object file already exists with other size.
+   */
+  private boolean writeKnownLocalFile(@NotNull Meta meta, @NotNull StreamProvider source) throws IOException {
+    final Path lfsFile = getLfsObjectPath(basePath, meta.getOid());
+    // Is object already exists?
+    if (Files.exists(lfsFile)) {
+      return Files.size(lfsFile) == meta.getSize();
+    }
+    Files.createDirectories(lfsFile.getParent());
+    try {
+      writeLocalFile(source, lfsFile, meta.getSize());
+      stats.addWritten(meta.getSize());
+      return true;
+    } catch (FileAlreadyExistsException ignored) {
+      // Object was created concurrently.
+      return Files.size(lfsFile) == meta.getSize();
+    }
+  }
+
+  /**
+   * Write blob content directly to LFS object file. Partially written file is removed on failure.
+   */
+  private static void writeLocalFile(@NotNull StreamProvider source, @NotNull Path lfsFile, long expectedSize) throws IOException {
+    final OutputStream ostream = Files.newOutputStream(lfsFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    boolean success = false;
+    try {
+      long size = 0;
+      try (InputStream istream = source.getStream()) {
+        byte[] buffer = new byte[0x10000];
+        while (true) {
+          int read = istream.read(buffer);
+          if (read <= 0) break;
+          ostream.write(buffer, 0, read);
+          size += read;
+        }
+      } finally {
+        ostream.close();
+      }
+      if (size != expectedSize) {
+        throw new IOException("Unexpected LFS object size " + lfsFile + ": " + size + " (expected: " + expectedSize + ")");
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        Files.deleteIfExists(lfsFile);
+      }
+    }
+  }
+
+  @NotNull
+  static MessageDigest createSha256() {
     // Prepare for hash calculation
     try {
       return MessageDigest.getInstance("SHA-256");
@@ -374,7 +825,7 @@ public class GitConverter {
     }
   }
 
-  private boolean isLfsPointer(@NotNull ObjectLoader loader) {
+  static boolean isLfsPointer(@NotNull ObjectLoader loader) {
     return loader.getSize() <= ru.bozaro.gitlfs.pointer.Constants.POINTER_MAX_SIZE
         && Pointer.parsePointer(loader.getBytes()) != null;
   }
@@ -391,30 +842,41 @@ public class GitConverter {
       @NotNull
       @Override
       public ObjectId convert(@NotNull Repository dstRepo, @NotNull ObjectInserter inserter, @NotNull ConvertResolver resolver, @Nullable Uploader uploader) throws IOException {
-        final Set<String> attributes = new TreeSet<>();
-        for (String glob : globs) {
-          attributes.add(glob + "\tfilter=lfs diff=lfs merge=lfs -text");
-        }
-        final ByteArrayOutputStream blob = new ByteArrayOutputStream();
-        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(openAttributes(reader, id), StandardCharsets.UTF_8))) {
-          while (true) {
-            String line = bufferedReader.readLine();
-            if (line == null) break;
-            if (!attributes.remove(line)) {
-              blob.write(line.getBytes(StandardCharsets.UTF_8));
-              blob.write('\n');
-            }
-          }
+        try (InputStream stream = openAttributes(reader, id)) {
+          return inserter.insert(Constants.OBJ_BLOB, createAttributes(stream));
         }
-        for (String line : attributes) {
-          blob.write(line.getBytes(StandardCharsets.UTF_8));
-          blob.write('\n');
-        }
-        return inserter.insert(Constants.OBJ_BLOB, blob.toByteArray());
       }
     };
   }
 
+  /**
+   * Create root attributes file content: original lines with LFS rules for missing ones.
+   *
+   * @param source Original attributes file content.
+   */
+  @NotNull
+  byte[] createAttributes(@NotNull InputStream source) throws IOException {
+    final Set<String> attributes = new TreeSet<>();
+    for (String glob : globs) {
+      attributes.add(getAttributesLine(glob));
+    }
+    final ByteArrayOutputStream blob = new ByteArrayOutputStream();
+    final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(source, StandardCharsets.UTF_8));
+    while (true) {
+      String line = bufferedReader.readLine();
+      if (line == null) break;
+      if (!attributes.remove(line)) {
+        blob.write(line.getBytes(StandardCharsets.UTF_8));
+        blob.write('\n');
+      }
+    }
+    for (String line : attributes) {
+      blob.write(line.getBytes(StandardCharsets.UTF_8));
+      blob.write('\n');
+    }
+    return blob.toByteArray();
+  }
+
   private ConvertTask copyTask(@NotNull ObjectReader reader, @NotNull ObjectId id) throws IOException {
     return new ConvertTask() {
       @NotNull
@@ -426,12 +888,84 @@ public class GitConverter {
       @NotNull
       @Override
       public ObjectId convert(@NotNull Repository dstRepo, @NotNull ObjectInserter inserter, @NotNull ConvertResolver resolver, @Nullable Uploader uploader) throws IOException {
-        if (dstRepo.hasObject(id)) return id;
+        if (hasObject(dstRepo, inserter, id)) return id;
         return copy(inserter, reader.open(id));
       }
     };
   }
 
+  /**
+   * Copy source tree with all objects which are missing in destination repository.
+   */
+  @NotNull
+  private ConvertTask copyTreeTask(@NotNull ObjectReader reader, @NotNull ObjectId id) {
+    return new ConvertTask() {
+      @NotNull
+      @Override
+      public Iterable<TaskKey> depends() {
+        return Collections.emptyList();
+      }
+
+      @NotNull
+      @Override
+      public ObjectId convert(@NotNull Repository dstRepo, @NotNull ObjectInserter inserter, @NotNull ConvertResolver resolver, @Nullable Uploader uploader) throws IOException {
+        return copyTree(reader, dstRepo, inserter, id);
+      }
+    };
+  }
+
+  /**
+   * Convert tree without matching files in place: result is the same as result of tree conversion task.
+   */
+  @NotNull
+  private ObjectId copyTree(@NotNull ObjectReader reader, @NotNull Repository dstRepo, @NotNull ObjectInserter inserter, @NotNull ObjectId id) throws IOException {
+    // Tree is written after its entries, so existing tree is complete.
+    if (hasObject(dstRepo, inserter, id)) return id;
+    // Rewritten tree has other id: it is shared by all parents with the same subtree.
+    final ObjectId rewritten = rewrittenTrees.get(id);
+    if (rewritten != null) {
+      // Inserter reader also sees not flushed objects.
+      try (ObjectReader dstReader = inserter.newReader()) {
+        if (dstReader.has(rewritten)) return rewritten;
+      }
+    }
+    final List<CopyEntry> entries = new ArrayList<>();
+    final CanonicalTreeParser treeParser = new CanonicalTreeParser(null, reader, id);
+    while (!treeParser.eof()) {
+      final FileMode fileMode = treeParser.getEntryFileMode();
+      ObjectId entryId = treeParser.getEntryObjectId();
+      // Missing source objects are kept as is (see keepMissingTask).
+      if (!reader.has(entryId)) {
+        log.debug("Missing source object: {}", entryId.name());
+      } else if (fileMode.getObjectType() == Constants.OBJ_TREE) {
+        entryId = copyTree(reader, dstRepo, inserter, entryId);
+      } else if (fileMode.getObjectType() == Constants.OBJ_BLOB && !hasObject(dstRepo, inserter, entryId)) {
+        copy(inserter, reader.open(entryId));
+      }
+      entries.add(new CopyEntry(fileMode, treeParser.getEntryPathString(), entryId));
+      treeParser.next();
+    }
+    // Source tree can have non-canonical modes or entry order: write it in the same way as converted tree.
+    entries.sort((a, b) -> GitTreeEntry.compare(a.fileName, a.fileMode, b.fileName, b.fileMode));
+    final TreeFormatter treeBuilder = new TreeFormatter();
+    for (CopyEntry entry : entries) {
+      treeBuilder.append(entry.fileName, entry.fileMode, entry.objectId);
+    }
+    if (checkTrees) {
+      new ObjectChecker().checkTree(treeBuilder.toByteArray());
+    }
+    final ObjectId result = inserter.insert(treeBuilder);
+    if (!result.equals(id)) {
+      rewrittenTrees.put(id.copy(), result);
+    }
+    return result;
+  }
+
+  @NotNull
+  static String getAttributesLine(@NotNull String glob) {
+    return glob + "\tfilter=lfs diff=lfs merge=lfs -text";
+  }
+
   @NotNull
   private InputStream openAttributes(@NotNull ObjectReader reader, @Nullable ObjectId id) throws IOException {
     if (ObjectId.zeroId().equals(id)) {
@@ -462,8 +996,8 @@ public class GitConverter {
     ObjectId resolve(@NotNull TaskKey key);
 
     @NotNull
-    default ObjectId resolve(@NotNull TaskType type, @Nullable String path, @NotNull ObjectId objectId) {
-      return resolve(new TaskKey(type, path, objectId));
+    default ObjectId resolve(@NotNull TaskType type, int pathId, @NotNull ObjectId objectId) {
+      return resolve(new TaskKey(type, pathId, objectId));
     }
   }
 
@@ -480,6 +1014,21 @@ public class GitConverter {
     void upload(@NotNull ObjectId oid, @NotNull Meta meta);
   }
 
+  private static final class CopyEntry {
+    @NotNull
+    private final FileMode fileMode;
+    @NotNull
+    private final String fileName;
+    @NotNull
+    private final ObjectId objectId;
+
+    private CopyEntry(@NotNull FileMode fileMode, @NotNull String fileName, @NotNull ObjectId objectId) {
+      this.fileMode = fileMode;
+      this.fileName = fileName;
+      this.objectId = objectId;
+    }
+  }
+
   private static class MetaData implements Serializable {
     private final String oid;
     private final long size;
@@ -39,22 +39,29 @@ public final class GitTreeEntry implements Comparable<GitTreeEntry> {
 
   @Override
   public int compareTo(@NotNull GitTreeEntry peer) {
-    int length1 = this.fileName.length();
-    int length2 = peer.fileName.length();
+    return compare(this.fileName, this.fileMode, peer.fileName, peer.fileMode);
+  }
+
+  /**
+   * Compare tree entries in git tree order.
+   */
+  public static int compare(@NotNull String fileName1, @NotNull FileMode fileMode1, @NotNull String fileName2, @NotNull FileMode fileMode2) {
+    int length1 = fileName1.length();
+    int length2 = fileName2.length();
     final int length = Math.min(length1, length2) + 1;
     for (int i = 0; i < length; i++) {
       final char c1;
       if (i < length1) {
-        c1 = this.fileName.charAt(i);
-      } else if ((i == length1) && (this.getFileMode() == FileMode.TREE)) {
+        c1 = fileName1.charAt(i);
+      } else if ((i == length1) && (fileMode1 == FileMode.TREE)) {
         c1 = '/';
       } else {
         c1 = 0;
       }
       final char c2;
       if (i < length2) {
-        c2 = peer.fileName.charAt(i);
-      } else if ((i == length2) && (peer.getFileMode() == FileMode.TREE)) {
+        c2 = fileName2.charAt(i);
+      } else if ((i == length2) && (fileMode2 == FileMode.TREE)) {
         c2 = '/';
       } else {
         c2 = 0;
@@ -0,0 +1,301 @@
+package git.lfs.migrate;
+
+import org.apache.commons.codec.binary.Hex;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.*;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.bozaro.gitlfs.pointer.Pointer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Post-migration verifier.
+ * <p>
+ * Walks source and destination histories in lockstep and checks that:
+ * <ul>
+ * <li>non-LFS trees and blobs are identical;</li>
+ * <li>root {@code .gitattributes} contains original lines and LFS rules;</li>
+ * <li>every pointer blob can be parsed and matches original blob hash and size;</li>
+ * <li>every local LFS object exists and has valid hash.</li>
+ * </ul>
+ */
+public class GitVerifier implements AutoCloseable {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(GitVerifier.class);
+  @NotNull
+  private static final String OID_PREFIX = "sha256:";
+
+  @NotNull
+  private final GitConverter converter;
+  @NotNull
+  private final ThreadReaders srcReaders;
+  @NotNull
+  private final ThreadReaders dstReaders;
+  @Nullable
+  private final Path lfsPath;
+  @NotNull
+  private final Set<List<Object>> checked = ConcurrentHashMap.newKeySet();
+  @NotNull
+  private final Set<String> checkedLfs = ConcurrentHashMap.newKeySet();
+  @NotNull
+  private final AtomicLong objects = new AtomicLong();
+  @NotNull
+  private final AtomicLong errors = new AtomicLong();
+  @NotNull
+  private final ParallelWalker<Check> walker;
+
+  /**
+   * Create verifier.
+   *
+   * @param converter Converter with migration settings.
+   * @param srcRepo   Source repository.
+   * @param dstRepo   Destination repository.
+   * @param lfsPath   Local LFS storage base path (null if LFS objects are stored on server).
+   * @param threads   Thread count.
+   */
+  public GitVerifier(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Repository dstRepo, @Nullable Path lfsPath, int threads) {
+    this.converter = converter;
+    this.srcReaders = new ThreadReaders(srcRepo);
+    this.dstReaders = new ThreadReaders(dstRepo);
+    this.lfsPath = lfsPath;
+    this.walker = new ParallelWalker<>(Check::run, threads);
+  }
+
+  /**
+   * Verify refs.
+   *
+   * @param srcRefs Source refs.
+   * @param dstRefs Destination refs.
+   * @return Error count.
+   */
+  public long verify(@NotNull Map<String, Ref> srcRefs, @NotNull Map<String, Ref> dstRefs) throws IOException, InterruptedException {
+    for (Map.Entry<String, Ref> entry : srcRefs.entrySet()) {
+      final Ref dstRef = dstRefs.get(entry.getKey());
+      if (dstRef == null || dstRef.getObjectId() == null) {
+        error("ref {} not found in destination repository", entry.getKey());
+        continue;
+      }
+      schedule(entry.getValue().getObjectId(), dstRef.getObjectId(), null);
+    }
+    walker.await();
+    log.info("Verified objects: {}, LFS objects: {}, errors: {}", objects.get(), checkedLfs.size(), errors.get());
+    return errors.get();
+  }
+
+  private void schedule(@NotNull ObjectId srcId, @NotNull ObjectId dstId, @Nullable String path) {
+    if (checked.add(Arrays.asList(srcId.copy(), dstId.copy(), path))) {
+      walker.add(() -> verifyObject(srcId, dstId, path));
+    }
+  }
+
+  private void verifyObject(@NotNull ObjectId srcId, @NotNull ObjectId dstId, @Nullable String path) throws IOException {
+    objects.incrementAndGet();
+    final ObjectReader srcReader = srcReaders.get();
+    final ObjectReader dstReader = dstReaders.get();
+    if (!srcReader.has(srcId)) {
+      if (!srcId.equals(dstId)) {
+        error("missing source object {} converted to {}", srcId.name(), dstId.name());
+      }
+      return;
+    }
+    if (!dstReader.has(dstId)) {
+      error("object {} not found in destination repository (source: {})", dstId.name(), srcId.name());
+      return;
+    }
+    final RevObject srcObject = new RevWalk(srcReader).parseAny(srcId);
+    final RevObject dstObject = new RevWalk(dstReader).parseAny(dstId);
+    if (srcObject.getType() != dstObject.getType()) {
+      error("object {} type mismatch with {}", dstId.name(), srcId.name());
+      return;
+    }
+    if (srcObject instanceof RevCommit) {
+      verifyCommit((RevCommit) srcObject, (RevCommit) dstObject);
+    } else if (srcObject instanceof RevTag) {
+      verifyTag((RevTag) srcObject, (RevTag) dstObject);
+    } else if (srcObject instanceof RevTree) {
+      verifyTree(srcReader, dstReader, srcId, dstId, path == null ? "" : path);
+    } else if (!srcId.equals(dstId)) {
+      error("blob {} changed to {}", srcId.name(), dstId.name());
+    }
+  }
+
+  private void verifyCommit(@NotNull RevCommit src, @NotNull RevCommit dst) {
+    if (!Objects.equals(src.getAuthorIdent(), dst.getAuthorIdent())
+        || !Objects.equals(src.getCommitterIdent(), dst.getCommitterIdent())
+        || !Objects.equals(src.getFullMessage(), dst.getFullMessage())) {
+      error("commit {} metadata differs from {}", dst.name(), src.name());
+    }
+    // Parents outside of history limit are dropped.
+    final HistoryLimit limit = converter.getHistoryLimit();
+    final List<RevCommit> parents = limit == null ? Arrays.asList(src.getParents()) : limit.getParents(src);
+    if (parents.size() != dst.getParentCount()) {
+      error("commit {} parent count differs from {}", dst.name(), src.name());
+      return;
+    }
+    for (int i = 0; i < parents.size(); ++i) {
+      schedule(parents.get(i), dst.getParent(i), null);
+    }
+    schedule(src.getTree(), dst.getTree(), "");
+  }
+
+  private void verifyTag(@NotNull RevTag src, @NotNull RevTag dst) {
+    if (!Objects.equals(src.getTagName(), dst.getTagName())
+        || !Objects.equals(src.getTaggerIdent(), dst.getTaggerIdent())
+        || !Objects.equals(src.getFullMessage(), dst.getFullMessage())) {
+      error("tag {} metadata differs from {}", dst.name(), src.name());
+    }
+    schedule(src.getObject(), dst.getObject(), null);
+  }
+
+  private void verifyTree(@NotNull ObjectReader srcReader, @NotNull ObjectReader dstReader, @NotNull ObjectId srcId, @NotNull ObjectId dstId, @NotNull String path) throws IOException {
+    final Map<String, GitTreeEntry> srcEntries = readTree(srcReader, srcId);
+    final Map<String, GitTreeEntry> dstEntries = readTree(dstReader, dstId);
+    if (path.isEmpty()) {
+      final GitTreeEntry srcAttributes = srcEntries.remove(GitConverter.GIT_ATTRIBUTES);
+      if (srcAttributes != null || converter.getGlobs().length > 0) {
+        final GitTreeEntry dstAttributes = dstEntries.remove(GitConverter.GIT_ATTRIBUTES);
+        if (dstAttributes == null) {
+          error("tree {} doesn't contain {}", dstId.name(), GitConverter.GIT_ATTRIBUTES);
+        } else {
+          verifyAttributes(srcReader, dstReader, srcAttributes, dstAttributes);
+        }
+      }
+    }
+    if (!srcEntries.keySet().equals(dstEntries.keySet())) {
+      error("tree {} entries differs from {} ({})", dstId.name(), srcId.name(), path);
+      return;
+    }
+    for (GitTreeEntry srcEntry : srcEntries.values()) {
+      final GitTreeEntry dstEntry = dstEntries.get(srcEntry.getFileName());
+      final String fullPath = path + "/" + srcEntry.getFileName();
+      final ObjectId srcChild = srcEntry.getTaskKey().getObjectId();
+      final ObjectId dstChild = dstEntry.getTaskKey().getObjectId();
+      if (!srcEntry.getFileMode().equals(dstEntry.getFileMode())) {
+        error("file mode changed: {}", fullPath);
+      } else if (srcEntry.getFileMode() == FileMode.TREE) {
+        schedule(srcChild, dstChild, fullPath);
+      } else if (GitConverter.isFile(srcEntry.getFileMode()) && converter.matchFilename(fullPath)) {
+        if (checked.add(Arrays.asList(srcChild.copy(), dstChild.copy(), null))) {
+          walker.add(() -> verifyPointer(srcChild, dstChild, fullPath));
+        }
+      } else if (!srcChild.equals(dstChild)) {
+        error("object changed: {} ({} -> {})", fullPath, srcChild.name(), dstChild.name());
+      }
+    }
+  }
+
+  private void verifyAttributes(@NotNull ObjectReader srcReader, @NotNull ObjectReader dstReader, @Nullable GitTreeEntry src, @NotNull GitTreeEntry dst) throws IOException {
+    final ObjectId dstId = dst.getTaskKey().getObjectId();
+    final FileMode fileMode = src == null ? FileMode.REGULAR_FILE : src.getFileMode();
+    if (!fileMode.equals(dst.getFileMode())) {
+      error("file mode changed: /{}", GitConverter.GIT_ATTRIBUTES);
+      return;
+    }
+    final byte[] expected;
+    try (InputStream stream = src == null ? new ByteArrayInputStream(new byte[0]) : srcReader.open(src.getTaskKey().getObjectId(), Constants.OBJ_BLOB).openStream()) {
+      expected = converter.createAttributes(stream);
+    }
+    if (!Arrays.equals(expected, dstReader.open(dstId, Constants.OBJ_BLOB).getBytes())) {
+      error("attributes {} differs from expected content (source: {})", dstId.name(), src == null ? "none" : src.getTaskKey().getObjectId().name());
+    }
+  }
+
+  private void verifyPointer(@NotNull ObjectId srcId, @NotNull ObjectId dstId, @NotNull String path) throws IOException {
+    objects.incrementAndGet();
+    final ObjectLoader srcLoader = srcReaders.get().open(srcId, Constants.OBJ_BLOB);
+    if (srcLoader.getSize() == 0 || GitConverter.isLfsPointer(srcLoader)) {
+      if (!srcId.equals(dstId)) {
+        error("blob changed: {} ({} -> {})", path, srcId.name(), dstId.name());
+      }
+      return;
+    }
+    final ObjectLoader dstLoader = dstReaders.get().open(dstId, Constants.OBJ_BLOB);
+    final Map<String, String> pointer = dstLoader.getSize() <= ru.bozaro.gitlfs.pointer.Constants.POINTER_MAX_SIZE ? Pointer.parsePointer(dstLoader.getBytes()) : null;
+    if (pointer == null) {
+      error("blob is not LFS pointer: {} ({})", path, dstId.name());
+      return;
+    }
+    final String oid = pointer.get("oid");
+    final String hash;
+    try (InputStream stream = srcLoader.openStream()) {
+      hash = sha256(stream);
+    }
+    if (!(OID_PREFIX + hash).equals(oid) || !String.valueOf(srcLoader.getSize()).equals(pointer.get("size"))) {
+      error("pointer doesn't match original blob: {} ({} -> {})", path, srcId.name(), dstId.name());
+      return;
+    }
+    if (lfsPath != null && checkedLfs.add(hash)) {
+      verifyLfsObject(hash, srcLoader.getSize());
+    }
+  }
+
+  private void verifyLfsObject(@NotNull String hash, long size) throws IOException {
+    final Path file = GitConverter.getLfsObjectPath(Objects.requireNonNull(lfsPath), hash);
+    if (!Files.exists(file)) {
+      error("LFS object not found: {}", file);
+      return;
+    }
+    if (Files.size(file) != size) {
+      error("LFS object has invalid size: {}", file);
+      return;
+    }
+    try (InputStream stream = Files.newInputStream(file)) {
+      if (!hash.equals(sha256(stream))) {
+        error("LFS object has invalid hash: {}", file);
+      }
+    }
+  }
+
+  @NotNull
+  private static String sha256(@NotNull InputStream stream) throws IOException {
+    final MessageDigest md = GitConverter.createSha256();
+    final byte[] buffer = new byte[0x10000];
+    while (true) {
+      int read = stream.read(buffer);
+      if (read <= 0) break;
+      md.update(buffer, 0, read);
+    }
+    return new String(Hex.encodeHex(md.digest(), true));
+  }
+
+  @NotNull
+  private static Map<String, GitTreeEntry> readTree(@NotNull ObjectReader reader, @NotNull ObjectId id) throws IOException {
+    final Map<String, GitTreeEntry> entries = new HashMap<>();
+    final CanonicalTreeParser treeParser = new CanonicalTreeParser(null, reader, id);
+    while (!treeParser.eof()) {
+      final TaskKey taskKey = new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, treeParser.getEntryObjectId());
+      entries.put(treeParser.getEntryPathString(), new GitTreeEntry(treeParser.getEntryFileMode(), taskKey, treeParser.getEntryPathString()));
+      treeParser.next();
+    }
+    return entries;
+  }
+
+  private void error(@NotNull String format, Object... args) {
+    errors.incrementAndGet();
+    log.error("Verify failed: " + format, args);
+  }
+
+  @Override
+  public void close() {
+    walker.close();
+    srcReaders.close();
+    dstReaders.close();
+  }
+
+  @FunctionalInterface
+  private interface Check {
+    void run() throws IOException, InterruptedException;
+  }
+}
@@ -0,0 +1,181 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Depth and date limit of converted history.
+ * <p>
+ * Commit is converted if it is reachable from refs through converted commits only, its distance from
+ * nearest ref is less than depth and it is not older than since date. Parents outside of the limit are
+ * dropped from boundary commits, so boundary commits without converted parents become root commits.
+ */
+public class HistoryLimit {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(HistoryLimit.class);
+
+  private final int depth;
+  private final long since;
+  @NotNull
+  private final Set<ObjectId> included = new HashSet<>();
+  /**
+   * Dropped parent indexes of boundary commits.
+   */
+  @NotNull
+  private final Map<ObjectId, BitSet> boundary = new HashMap<>();
+
+  /**
+   * Find converted commits.
+   *
+   * @param repository Source repository.
+   * @param refs       Converted refs.
+   * @param depth      Maximum commit count from ref (0 if not limited).
+   * @param since      Minimal commit time in seconds (0 if not limited).
+   */
+  public HistoryLimit(@NotNull Repository repository, @NotNull Collection<Ref> refs, int depth, long since) throws IOException {
+    this.depth = depth;
+    this.since = since;
+    final List<RevCommit> commits = new ArrayList<>();
+    try (RevWalk revWalk = new RevWalk(repository)) {
+      revWalk.setRetainBody(false);
+      // Breadth-first walk: commit is reached by shortest path first.
+      final Map<ObjectId, Integer> distance = new HashMap<>();
+      final Deque<RevCommit> queue = new ArrayDeque<>();
+      for (Ref ref : refs) {
+        final RevCommit commit = peelCommit(revWalk, ref.getObjectId());
+        if (commit != null && !distance.containsKey(commit) && accept(commit, 0)) {
+          distance.put(commit, 0);
+          queue.add(commit);
+        }
+      }
+      while (!queue.isEmpty()) {
+        final RevCommit commit = queue.remove();
+        commits.add(commit);
+        final int next = distance.get(commit) + 1;
+        for (RevCommit parent : commit.getParents()) {
+          revWalk.parseHeaders(parent);
+          if (!distance.containsKey(parent) && accept(parent, next)) {
+            distance.put(parent, next);
+            queue.add(parent);
+          }
+        }
+      }
+      for (RevCommit commit : commits) {
+        included.add(commit.copy());
+      }
+      for (RevCommit commit : commits) {
+        final BitSet dropped = new BitSet();
+        for (int i = 0; i < commit.getParentCount(); ++i) {
+          if (!included.contains(commit.getParent(i))) {
+            dropped.set(i);
+          }
+        }
+        if (!dropped.isEmpty()) {
+          boundary.put(commit.copy(), dropped);
+        }
+      }
+    }
+    log.info("History limit: {} commits, {} boundary commits", included.size(), boundary.size());
+  }
+
+  private boolean accept(@NotNull RevCommit commit, int distance) {
+    return (depth <= 0 || distance < depth) && (since <= 0 || commit.getCommitTime() >= since);
+  }
+
+  @Nullable
+  private static RevCommit peelCommit(@NotNull RevWalk revWalk, @Nullable ObjectId id) throws IOException {
+    if (id == null || !revWalk.getObjectReader().has(id)) {
+      return null;
+    }
+    final RevObject revObject = revWalk.peel(revWalk.parseAny(id));
+    return revObject instanceof RevCommit ? (RevCommit) revObject : null;
+  }
+
+  /**
+   * Remove refs to commits outside of the limit.
+   *
+   * @return Refs to converted commits and to non-commit objects.
+   */
+  @NotNull
+  public Map<String, Ref> filter(@NotNull Repository repository, @NotNull Map<String, Ref> refs) throws IOException {
+    final Map<String, Ref> result = new TreeMap<>();
+    try (RevWalk revWalk = new RevWalk(repository)) {
+      for (Map.Entry<String, Ref> entry : refs.entrySet()) {
+        final ObjectId id = entry.getValue().getObjectId();
+        if (id != null && revWalk.getObjectReader().has(id)) {
+          final RevObject revObject = revWalk.peel(revWalk.parseAny(id));
+          if (revObject instanceof RevCommit && !isIncluded(revObject)) {
+            log.info("  skip ref outside of history limit: {}", entry.getKey());
+            continue;
+          }
+        }
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  public boolean isIncluded(@NotNull AnyObjectId commit) {
+    return included.contains(commit);
+  }
+
+  /**
+   * @return Converted parents of converted commit.
+   */
+  @NotNull
+  public List<RevCommit> getParents(@NotNull RevCommit commit) {
+    final BitSet dropped = boundary.get(commit);
+    if (dropped == null) {
+      return Arrays.asList(commit.getParents());
+    }
+    final List<RevCommit> result = new ArrayList<>();
+    for (int i = 0; i < commit.getParentCount(); ++i) {
+      if (!dropped.get(i)) {
+        result.add(commit.getParent(i));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Add limit parameters and boundary commits to digest.
+   * <p>
+   * Conversion result of every commit depends on converted history of its parents, so results of runs
+   * with different limits must not be shared.
+   */
+  public void fingerprint(@NotNull MessageDigest md) {
+    md.update(("depth:" + depth + "\0since:" + since + "\0").getBytes(StandardCharsets.UTF_8));
+    final List<ObjectId> commits = new ArrayList<>(boundary.keySet());
+    Collections.sort(commits);
+    final byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+    for (ObjectId commit : commits) {
+      commit.copyRawTo(raw, 0);
+      md.update(raw);
+      md.update(boundary.get(commit).toByteArray());
+      md.update((byte) 0);
+    }
+  }
+
+  /**
+   * @return Dropped parent indexes (null if commit is not boundary commit).
+   */
+  @Nullable
+  public BitSet getDroppedParents(@NotNull AnyObjectId commit) {
+    return boundary.get(commit);
+  }
+}
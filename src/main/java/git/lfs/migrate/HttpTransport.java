@@ -0,0 +1,266 @@
+package git.lfs.migrate;
+
+import org.apache.http.*;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.apache.http.ssl.SSLContexts;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tuned HTTP transport for LFS client: pooled keep-alive connections and retries with backoff.
+ */
+public class HttpTransport implements AutoCloseable {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(HttpTransport.class);
+  private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+  private static final long MAX_RETRY_AFTER = TimeUnit.MINUTES.toMillis(10);
+  private static final long SMALL_REQUEST_SIZE = 0x10000;
+  @NotNull
+  private static final String REQUEST_START = HttpTransport.class.getName() + ".start";
+  @NotNull
+  private static final String REQUEST_SMALL = HttpTransport.class.getName() + ".small";
+
+  @NotNull
+  private final PoolingHttpClientConnectionManager connectionManager;
+  @NotNull
+  private final CloseableHttpClient httpClient;
+  @NotNull
+  private final List<ResponseListener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Create transport.
+   *
+   * @param maxPerRoute        Maximum connection count per route.
+   * @param maxTotal           Maximum connection count.
+   * @param keepAlive          Keep-alive time for connections without server keep-alive hint (in milliseconds).
+   * @param socketBuffer       Socket send/receive buffer size (0 for system default).
+   * @param retries            Retry count for throttled (429) and server error (5xx) responses.
+   * @param retryDelay         Base delay for exponential retry backoff (in milliseconds).
+   * @param noCheckCertificate Don't check the server certificate.
+   */
+  public HttpTransport(int maxPerRoute, int maxTotal, long keepAlive, int socketBuffer, int retries, long retryDelay, boolean noCheckCertificate) throws GeneralSecurityException {
+    final SSLConnectionSocketFactory sslFactory;
+    if (noCheckCertificate) {
+      sslFactory = new SSLConnectionSocketFactory(SSLContexts.custom()
+          .loadTrustMaterial((chain, authType) -> true)
+          .build(), (hostname, session) -> true);
+    } else {
+      sslFactory = SSLConnectionSocketFactory.getSocketFactory();
+    }
+    final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+        .register("https", sslFactory)
+        .build();
+    connectionManager = new PoolingHttpClientConnectionManager(registry, null, null, null, keepAlive, TimeUnit.MILLISECONDS);
+    connectionManager.setDefaultMaxPerRoute(Math.max(1, maxPerRoute));
+    connectionManager.setMaxTotal(Math.max(maxPerRoute, maxTotal));
+    final SocketConfig.Builder socketConfig = SocketConfig.custom()
+        .setSoKeepAlive(true)
+        .setTcpNoDelay(true);
+    if (socketBuffer > 0) {
+      socketConfig.setSndBufSize(socketBuffer);
+      socketConfig.setRcvBufSize(socketBuffer);
+      connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+          .setBufferSize(socketBuffer)
+          .build());
+    }
+    connectionManager.setDefaultSocketConfig(socketConfig.build());
+    // Check connections that were idle for a while before reuse.
+    connectionManager.setValidateAfterInactivity((int) Math.min(keepAlive, TimeUnit.SECONDS.toMillis(2)));
+
+    final HttpClientBuilder httpBuilder = HttpClients.custom();
+    httpBuilder.setUserAgent("git-lfs-migrate");
+    httpBuilder.setConnectionManager(connectionManager);
+    httpBuilder.setKeepAliveStrategy(new KeepAliveStrategy(keepAlive));
+    httpBuilder.setServiceUnavailableRetryStrategy(new BackoffRetryStrategy(retries, retryDelay));
+    httpBuilder.evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS);
+    httpBuilder.addInterceptorLast((HttpRequestInterceptor) (request, context) -> {
+      context.setAttribute(REQUEST_START, System.nanoTime());
+      context.setAttribute(REQUEST_SMALL, isSmallRequest(request));
+    });
+    httpBuilder.addInterceptorLast((HttpResponseInterceptor) (response, context) -> {
+      final Object start = context.getAttribute(REQUEST_START);
+      if (start instanceof Long) {
+        final long latency = System.nanoTime() - (Long) start;
+        final boolean small = Boolean.TRUE.equals(context.getAttribute(REQUEST_SMALL));
+        for (ResponseListener listener : listeners) {
+          listener.onResponse(response.getStatusLine().getStatusCode(), latency, small);
+        }
+      }
+    });
+    httpClient = httpBuilder.build();
+  }
+
+  private static boolean isSmallRequest(@NotNull HttpRequest request) {
+    if (request instanceof HttpEntityEnclosingRequest) {
+      final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+      return entity == null || (entity.getContentLength() >= 0 && entity.getContentLength() < SMALL_REQUEST_SIZE);
+    }
+    return true;
+  }
+
+  /**
+   * Add listener for every received HTTP response (including retried ones).
+   */
+  public void addListener(@NotNull ResponseListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(@NotNull ResponseListener listener) {
+    listeners.remove(listener);
+  }
+
+  @NotNull
+  public CloseableHttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  /**
+   * @return Connection pool statistics for progress output.
+   */
+  @NotNull
+  public String getPoolStats() {
+    final PoolStats stats = connectionManager.getTotalStats();
+    return "connections: " + stats.getLeased() + " leased, " + stats.getAvailable() + " idle, " + stats.getPending() + " pending";
+  }
+
+  @Override
+  public void close() throws IOException {
+    httpClient.close();
+  }
+
+  @FunctionalInterface
+  public interface ResponseListener {
+    /**
+     * HTTP response received.
+     *
+     * @param status  Response status code.
+     * @param latency Time from request start to response headers in nanoseconds.
+     * @param small   Request has no body or small body, so latency doesn't depend on transfer size.
+     */
+    void onResponse(int status, long latency, boolean small);
+  }
+
+  /**
+   * Use server keep-alive hint if defined, otherwise configured keep-alive.
+   */
+  private static final class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+    private final long keepAlive;
+
+    private KeepAliveStrategy(long keepAlive) {
+      this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public long getKeepAliveDuration(@NotNull HttpResponse response, @NotNull HttpContext context) {
+      final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      return duration > 0 ? duration : keepAlive;
+    }
+  }
+
+  /**
+   * Retry throttled (429) and server error (5xx) responses with exponential backoff and jitter.
+   * Delay from Retry-After header has priority.
+   * <p>
+   * Requests with already consumed streaming body (object uploads) are not retried here: upload is repeated by
+   * LFS client with reopened object stream.
+   */
+  static final class BackoffRetryStrategy implements ServiceUnavailableRetryStrategy {
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private final int retries;
+    private final long retryDelay;
+    @NotNull
+    private final ThreadLocal<Long> interval = new ThreadLocal<>();
+
+    BackoffRetryStrategy(int retries, long retryDelay) {
+      this.retries = retries;
+      this.retryDelay = retryDelay;
+    }
+
+    @Override
+    public boolean retryRequest(@NotNull HttpResponse response, int executionCount, @NotNull HttpContext context) {
+      final int status = response.getStatusLine().getStatusCode();
+      if (executionCount > retries || (status != SC_TOO_MANY_REQUESTS && status < HttpStatus.SC_INTERNAL_SERVER_ERROR)) {
+        return false;
+      }
+      if (!isRepeatable(HttpCoreContext.adapt(context).getRequest())) {
+        return false;
+      }
+      Long delay = getRetryAfter(response);
+      if (delay == null) {
+        delay = getBackoff(executionCount);
+      }
+      log.warn("HTTP request failed with status {}, retry {}/{} in {} ms", status, executionCount, retries, delay);
+      interval.set(delay);
+      return true;
+    }
+
+    private static boolean isRepeatable(@Nullable HttpRequest request) {
+      if (request instanceof HttpEntityEnclosingRequest) {
+        final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        return entity == null || entity.isRepeatable();
+      }
+      return true;
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of delay is fixed, half is random.
+     */
+    long getBackoff(int executionCount) {
+      final long delay = Math.min(MAX_RETRY_DELAY, retryDelay << Math.min(30, executionCount - 1));
+      return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    @Nullable
+    static Long getRetryAfter(@NotNull HttpResponse response) {
+      final Header header = response.getFirstHeader("Retry-After");
+      if (header == null) {
+        return null;
+      }
+      final String value = header.getValue().trim();
+      try {
+        return Math.min(MAX_RETRY_AFTER, Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value))));
+      } catch (NumberFormatException ignored) {
+      }
+      final Date date = DateUtils.parseDate(value);
+      if (date == null) {
+        return null;
+      }
+      return Math.min(MAX_RETRY_AFTER, Math.max(0, date.getTime() - System.currentTimeMillis()));
+    }
+
+    @Override
+    public long getRetryInterval() {
+      final Long delay = interval.get();
+      interval.remove();
+      return delay == null ? retryDelay : delay;
+    }
+  }
+}
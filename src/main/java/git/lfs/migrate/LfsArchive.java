@@ -0,0 +1,251 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * LFS objects archive reader (see {@link LfsArchiveWriter}).
+ */
+public final class LfsArchive {
+  static final int BLOCK_SIZE = 512;
+  @NotNull
+  static final String SEGMENT_SUFFIX = ".tar";
+  @NotNull
+  static final String INDEX_SUFFIX = ".idx";
+  private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+  private LfsArchive() {
+  }
+
+  /**
+   * Read all archive segment indexes.
+   *
+   * @param archivePath Archive directory.
+   * @return Archive entries ordered by segment and offset.
+   */
+  @NotNull
+  public static List<Entry> readIndex(@NotNull Path archivePath) throws IOException {
+    final List<Path> indexes;
+    try (Stream<Path> files = Files.list(archivePath)) {
+      indexes = files
+          .filter(file -> file.getFileName().toString().endsWith(INDEX_SUFFIX))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+    final List<Entry> result = new ArrayList<>();
+    for (Path index : indexes) {
+      final String name = index.getFileName().toString();
+      final Path segment = index.resolveSibling(name.substring(0, name.length() - INDEX_SUFFIX.length()) + SEGMENT_SUFFIX);
+      try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+        while (true) {
+          final String line = reader.readLine();
+          if (line == null) break;
+          if (line.isEmpty()) continue;
+          final String[] fields = line.split(" ");
+          if (fields.length != 3) {
+            throw new IOException("Invalid LFS archive index line " + index + ": " + line);
+          }
+          result.add(new Entry(fields[0], Long.parseLong(fields[1]), segment, Long.parseLong(fields[2])));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Extract archive to regular LFS storage layout.
+   *
+   * @param archivePath Archive directory.
+   * @param basePath    Repository path (objects are written to lfs/objects).
+   * @return Extracted object count (already existing objects are skipped).
+   */
+  public static int extract(@NotNull Path archivePath, @NotNull Path basePath) throws IOException {
+    final Path tempPath = Files.createDirectories(basePath.resolve("lfs/tmp"));
+    int extracted = 0;
+    FileChannel channel = null;
+    Path channelSegment = null;
+    try {
+      for (Entry entry : readIndex(archivePath)) {
+        final Path lfsFile = GitConverter.getLfsObjectPath(basePath, entry.getOid());
+        if (Files.exists(lfsFile) && Files.size(lfsFile) == entry.getSize()) {
+          continue;
+        }
+        if (!entry.getSegment().equals(channelSegment)) {
+          if (channel != null) channel.close();
+          channel = FileChannel.open(entry.getSegment(), StandardOpenOption.READ);
+          channelSegment = entry.getSegment();
+        }
+        final Path tmpFile = Files.createTempFile(tempPath, "archive", ".tmp");
+        try (FileChannel output = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+          long copied = 0;
+          while (copied < entry.getSize()) {
+            final long count = channel.transferTo(entry.getOffset() + copied, entry.getSize() - copied, output);
+            if (count <= 0) {
+              throw new IOException("Unexpected end of LFS archive segment: " + entry.getSegment());
+            }
+            copied += count;
+          }
+        }
+        Files.createDirectories(lfsFile.getParent());
+        Files.move(tmpFile, lfsFile, StandardCopyOption.ATOMIC_MOVE);
+        extracted++;
+      }
+    } finally {
+      if (channel != null) channel.close();
+    }
+    return extracted;
+  }
+
+  /**
+   * Open archive entry content.
+   *
+   * @param entry Archive entry.
+   * @return Entry content stream.
+   */
+  @NotNull
+  public static InputStream openStream(@NotNull Entry entry) throws IOException {
+    return new EntryInputStream(FileChannel.open(entry.getSegment(), StandardOpenOption.READ), entry.getOffset(), entry.getSize());
+  }
+
+  @NotNull
+  static String getEntryName(@NotNull String hash) {
+    return "lfs/objects/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+  }
+
+  /**
+   * Create ustar entry header for regular file.
+   */
+  @NotNull
+  static byte[] createHeader(@NotNull String name, long size) {
+    final byte[] header = new byte[BLOCK_SIZE];
+    final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    if (nameBytes.length > 100) {
+      throw new IllegalArgumentException("Entry name is too long: " + name);
+    }
+    System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+    putOctal(header, 100, 8, 0644);
+    putOctal(header, 108, 8, 0);
+    putOctal(header, 116, 8, 0);
+    if (size <= MAX_OCTAL_SIZE) {
+      putOctal(header, 124, 12, size);
+    } else {
+      // GNU base-256 size extension.
+      header[124] = (byte) 0x80;
+      for (int i = 0; i < 8; ++i) {
+        header[135 - i] = (byte) (size >>> (i * 8));
+      }
+    }
+    putOctal(header, 136, 12, System.currentTimeMillis() / 1000);
+    header[156] = '0';
+    System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+    // Checksum is calculated with checksum field filled by spaces.
+    for (int i = 148; i < 156; ++i) {
+      header[i] = ' ';
+    }
+    long checksum = 0;
+    for (byte b : header) {
+      checksum += b & 0xFF;
+    }
+    putOctal(header, 148, 7, checksum);
+    return header;
+  }
+
+  private static void putOctal(@NotNull byte[] header, int offset, int length, long value) {
+    final String octal = Long.toOctalString(value);
+    final int digits = length - 1;
+    for (int i = 0; i < digits; ++i) {
+      final int index = octal.length() - digits + i;
+      header[offset + i] = (byte) (index < 0 ? '0' : octal.charAt(index));
+    }
+    header[offset + digits] = 0;
+  }
+
+  public static final class Entry {
+    @NotNull
+    private final String oid;
+    private final long size;
+    @NotNull
+    private final Path segment;
+    private final long offset;
+
+    public Entry(@NotNull String oid, long size, @NotNull Path segment, long offset) {
+      this.oid = oid;
+      this.size = size;
+      this.segment = segment;
+      this.offset = offset;
+    }
+
+    @NotNull
+    public String getOid() {
+      return oid;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    @NotNull
+    public Path getSegment() {
+      return segment;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+  }
+
+  private static final class EntryInputStream extends InputStream {
+    @NotNull
+    private final FileChannel channel;
+    private long position;
+    private long remaining;
+
+    private EntryInputStream(@NotNull FileChannel channel, long position, long size) {
+      this.channel = channel;
+      this.position = position;
+      this.remaining = size;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final byte[] buffer = new byte[1];
+      return read(buffer, 0, 1) <= 0 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) return -1;
+      final int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of LFS archive segment");
+      }
+      position += read;
+      remaining -= read;
+      return read;
+    }
+
+    @Override
+    public long skip(long n) {
+      final long skipped = Math.max(0, Math.min(n, remaining));
+      position += skipped;
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
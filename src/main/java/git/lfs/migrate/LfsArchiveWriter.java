@@ -0,0 +1,171 @@
+package git.lfs.migrate;
+
+import org.apache.commons.codec.binary.Hex;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writer for LFS objects archive.
+ * <p>
+ * Every writing thread appends objects to its own tar-compatible segment file (entries are named as
+ * regular LFS storage paths, so segment can be unpacked by tar). Entry header is written after object
+ * content is hashed. Every segment has text index with lines: "oid size offset".
+ */
+public class LfsArchiveWriter implements AutoCloseable {
+  @NotNull
+  private final Path archivePath;
+  private final long segmentSize;
+  @NotNull
+  private final Set<String> hashes = ConcurrentHashMap.newKeySet();
+  @NotNull
+  private final AtomicInteger segmentIndex = new AtomicInteger();
+  @NotNull
+  private final List<Segment> segments = new ArrayList<>();
+  @NotNull
+  private final ThreadLocal<Segment> current = new ThreadLocal<>();
+
+  /**
+   * Create archive writer.
+   *
+   * @param archivePath Archive directory.
+   * @param segmentSize Segment size limit (segment is closed after it reaches this size).
+   */
+  public LfsArchiveWriter(@NotNull Path archivePath, long segmentSize) throws IOException {
+    this.archivePath = Files.createDirectories(archivePath);
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * Check if object is already stored in archive.
+   *
+   * @param hash Object SHA-256 hash.
+   * @return True if object is already stored.
+   */
+  public boolean contains(@NotNull String hash) {
+    return hashes.contains(hash);
+  }
+
+  /**
+   * Append object to archive.
+   *
+   * @param stream Object content.
+   * @param size   Object size.
+   * @return Object SHA-256 hash.
+   */
+  @NotNull
+  public String append(@NotNull InputStream stream, long size) throws IOException {
+    return getSegment().append(stream, size);
+  }
+
+  @NotNull
+  private Segment getSegment() throws IOException {
+    Segment segment = current.get();
+    if (segment != null && segment.position >= segmentSize) {
+      segment.close();
+      segment = null;
+    }
+    if (segment == null) {
+      segment = new Segment(segmentIndex.incrementAndGet());
+      synchronized (segments) {
+        segments.add(segment);
+      }
+      current.set(segment);
+    }
+    return segment;
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (segments) {
+      for (Segment segment : segments) {
+        segment.close();
+      }
+      segments.clear();
+    }
+  }
+
+  private final class Segment implements Closeable {
+    @NotNull
+    private final FileChannel channel;
+    @NotNull
+    private final Writer index;
+    private long position;
+    private boolean closed;
+
+    private Segment(int id) throws IOException {
+      final String name = String.format("segment-%06d", id);
+      channel = FileChannel.open(archivePath.resolve(name + LfsArchive.SEGMENT_SUFFIX), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      index = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(archivePath.resolve(name + LfsArchive.INDEX_SUFFIX), StandardOpenOption.CREATE_NEW), StandardCharsets.UTF_8));
+    }
+
+    @NotNull
+    private String append(@NotNull InputStream stream, long size) throws IOException {
+      final long headerOffset = position;
+      final long dataOffset = headerOffset + LfsArchive.BLOCK_SIZE;
+      // Header will be written after hash calculation.
+      channel.position(dataOffset);
+      final MessageDigest md = GitConverter.createSha256();
+      final byte[] buffer = new byte[0x10000];
+      long written = 0;
+      while (true) {
+        int read = stream.read(buffer);
+        if (read <= 0) break;
+        md.update(buffer, 0, read);
+        writeFully(ByteBuffer.wrap(buffer, 0, read));
+        written += read;
+      }
+      if (written != size) {
+        throw new IOException("Unexpected LFS object size: " + written + " (expected: " + size + ")");
+      }
+      final String hash = new String(Hex.encodeHex(md.digest(), true));
+      if (!hashes.add(hash)) {
+        // Object is already stored by other thread.
+        channel.truncate(headerOffset);
+        channel.position(headerOffset);
+        return hash;
+      }
+      final int padding = (int) ((LfsArchive.BLOCK_SIZE - written % LfsArchive.BLOCK_SIZE) % LfsArchive.BLOCK_SIZE);
+      writeFully(ByteBuffer.allocate(padding));
+      position = channel.position();
+      channel.position(headerOffset);
+      writeFully(ByteBuffer.wrap(LfsArchive.createHeader(LfsArchive.getEntryName(hash), size)));
+      channel.position(position);
+      index.write(hash + " " + size + " " + dataOffset + "\n");
+      return hash;
+    }
+
+    private void writeFully(@NotNull ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) return;
+      closed = true;
+      try {
+        // End of archive marker (drop tail of failed append).
+        channel.truncate(position);
+        channel.position(position);
+        writeFully(ByteBuffer.allocate(LfsArchive.BLOCK_SIZE * 2));
+      } finally {
+        channel.close();
+        index.close();
+      }
+    }
+  }
+}
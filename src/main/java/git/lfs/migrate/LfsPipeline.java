@@ -0,0 +1,364 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.lib.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.bozaro.gitlfs.client.io.StreamProvider;
+import ru.bozaro.gitlfs.common.data.Meta;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Staged conversion pipeline for LFS blobs.
+ * <p>
+ * Blob conversion is split to stages with separate thread pools and bounded queues:
+ * <ul>
+ * <li>read: inflate source blob (small blobs are kept in memory for next stages);</li>
+ * <li>hash: calculate SHA-256 for blobs without cached metadata;</li>
+ * <li>write: store LFS object (local file, archive or upload) and insert pointer blob;</li>
+ * <li>cache: store calculated metadata in hash cache (committed in background by batches).</li>
+ * </ul>
+ * Every stage measures busy time, so utilization report shows which stage limits throughput. Recent utilization
+ * is shown in progress output (see {@link #getUtilization()}), total one is logged on close.
+ */
+public class LfsPipeline implements AutoCloseable {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(LfsPipeline.class);
+  private static final int QUEUE_SIZE = 0x100;
+  @NotNull
+  private static final Item END = new Item(new TaskKey(GitConverter.TaskType.EndMark, PathTrie.NONE, ObjectId.zeroId()));
+
+  @NotNull
+  private final GitConverter converter;
+  @NotNull
+  private final Repository dstRepo;
+  @NotNull
+  private final ConcurrentMap<TaskKey, ObjectId> converted;
+  @Nullable
+  private final GitConverter.Uploader uploader;
+  @NotNull
+  private final Runnable progress;
+  @NotNull
+  private final ThreadReaders readers;
+  @NotNull
+  private final Queue<ObjectInserter> inserters = new ConcurrentLinkedQueue<>();
+  @NotNull
+  private final ThreadLocal<ObjectInserter> threadInserter = new ThreadLocal<>();
+  @NotNull
+  private final Semaphore memory;
+  private final int inlineLimit;
+  @NotNull
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  @NotNull
+  private final List<Stage> stages = new ArrayList<>();
+  @NotNull
+  private final Stage cacheStage;
+  @NotNull
+  private final Stage writeStage;
+  @NotNull
+  private final Stage hashStage;
+  @NotNull
+  private final Stage readStage;
+  private final long startTime = System.nanoTime();
+  private long lastTime = startTime;
+
+  /**
+   * Create pipeline.
+   *
+   * @param converter    Converter.
+   * @param srcRepo      Source repository.
+   * @param dstRepo      Destination repository.
+   * @param converted    Converted objects map.
+   * @param uploader     Uploader (null for local storage).
+   * @param progress     Callback for every converted task.
+   * @param readThreads  Read stage thread count.
+   * @param hashThreads  Hash stage thread count.
+   * @param writeThreads Write stage thread count.
+   * @param memoryLimit  Memory limit for blobs kept in memory between stages (in bytes).
+   */
+  public LfsPipeline(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Repository dstRepo, @NotNull ConcurrentMap<TaskKey, ObjectId> converted, @Nullable GitConverter.Uploader uploader, @NotNull Runnable progress, int readThreads, int hashThreads, int writeThreads, long memoryLimit) {
+    this.converter = converter;
+    this.dstRepo = dstRepo;
+    this.converted = converted;
+    this.uploader = uploader;
+    this.progress = progress;
+    this.readers = new ThreadReaders(srcRepo);
+    // Memory is accounted in kilobytes.
+    final int memoryPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryLimit >> 10));
+    this.memory = new Semaphore(memoryPermits);
+    this.inlineLimit = (int) Math.min(Integer.MAX_VALUE - 8, (long) memoryPermits << 10) / 4;
+    // Stages are created from the last one.
+    this.cacheStage = new Stage("cache", 1, false, null, this::cacheItem);
+    this.writeStage = new Stage("write", writeThreads, true, cacheStage, this::writeItem);
+    this.hashStage = new Stage("hash", hashThreads, false, writeStage, this::hashItem);
+    this.readStage = new Stage("read", readThreads, true, hashStage, this::readItem);
+  }
+
+  /**
+   * Add LFS blob task to pipeline.
+   *
+   * @param taskKey Task with {@link GitConverter.TaskType#UploadLfs} type.
+   */
+  public void add(@NotNull TaskKey taskKey) throws IOException, InterruptedException {
+    readStage.put(new Item(taskKey));
+  }
+
+  private void readItem(@NotNull Item item) throws IOException, InterruptedException {
+    final ObjectId id = item.taskKey.getObjectId();
+    final ObjectLoader loader = converter.getStats().open(readers.get(), id, Constants.OBJ_BLOB);
+    item.size = loader.getSize();
+    // Is empty blob (see #21) or object already converted?
+    if (item.size == 0 || GitConverter.isLfsPointer(loader)) {
+      item.passthrough = true;
+      item.content = loader.getCachedBytes();
+      return;
+    }
+    item.meta = converter.getCachedMeta(id);
+    item.cached = item.meta != null;
+    // Remote uploader reads blob by itself.
+    if (item.meta != null && uploader != null) {
+      return;
+    }
+    if (item.size <= inlineLimit) {
+      item.permits = (int) Math.max(1, item.size >> 10);
+      memory.acquire(item.permits);
+      item.content = loader.getCachedBytes(inlineLimit);
+      converter.getStats().addInflated(item.size);
+    }
+  }
+
+  private void hashItem(@NotNull Item item) throws IOException {
+    if (item.passthrough || item.meta != null) {
+      return;
+    }
+    try (InputStream stream = openStream(item).getStream()) {
+      item.meta = GitConverter.hashLfs(stream);
+    }
+  }
+
+  private void writeItem(@NotNull Item item) throws IOException {
+    final ObjectInserter inserter = getInserter();
+    final ObjectId id = item.taskKey.getObjectId();
+    final ObjectId result;
+    try {
+      if (item.passthrough) {
+        result = dstRepo.hasObject(id) ? id : inserter.insert(Constants.OBJ_BLOB, item.content);
+      } else {
+        final Meta meta = item.meta;
+        if (meta == null) {
+          throw new IllegalStateException("LFS object is not hashed: " + id.name());
+        }
+        converter.storeLfs(id, meta, openStream(item), uploader);
+        result = GitConverter.insertPointer(inserter, meta);
+      }
+    } finally {
+      item.content = null;
+      if (item.permits > 0) {
+        memory.release(item.permits);
+        item.permits = 0;
+      }
+    }
+    converted.put(item.taskKey, result);
+    progress.run();
+  }
+
+  private void cacheItem(@NotNull Item item) {
+    if (!item.passthrough && !item.cached && item.meta != null) {
+      converter.putCachedMeta(item.taskKey.getObjectId(), item.meta);
+    }
+  }
+
+  @NotNull
+  private StreamProvider openStream(@NotNull Item item) {
+    final byte[] content = item.content;
+    if (content != null) {
+      return () -> new ByteArrayInputStream(content);
+    }
+    final ObjectId id = item.taskKey.getObjectId();
+    return () -> converter.getStats().countInflated(converter.getStats().open(readers.get(), id, Constants.OBJ_BLOB).openStream());
+  }
+
+  @NotNull
+  private ObjectInserter getInserter() {
+    ObjectInserter inserter = threadInserter.get();
+    if (inserter == null) {
+      inserter = dstRepo.newObjectInserter();
+      threadInserter.set(inserter);
+      inserters.add(inserter);
+    }
+    return inserter;
+  }
+
+  /**
+   * Stage utilization and queue size since previous call.
+   */
+  @NotNull
+  public synchronized String getUtilization() {
+    final long now = System.nanoTime();
+    final long elapsed = Math.max(1, now - lastTime);
+    lastTime = now;
+    final StringBuilder message = new StringBuilder("pipeline:");
+    for (int i = stages.size() - 1; i >= 0; --i) {
+      final Stage stage = stages.get(i);
+      final long busy = stage.busy.get();
+      message.append(' ').append(stage.name).append(' ').append((busy - stage.lastBusy) * 100 / elapsed / stage.threads)
+          .append("% (").append(stage.queue.size()).append(" queued)");
+      stage.lastBusy = busy;
+    }
+    return message.toString();
+  }
+
+  /**
+   * Wait for all added tasks and stop pipeline.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      // Stop stages one by one: every stage is stopped after all previous stages are drained.
+      for (int i = stages.size() - 1; i >= 0; --i) {
+        stages.get(i).finish();
+      }
+      for (ObjectInserter inserter : inserters) {
+        inserter.flush();
+      }
+      converter.commitCache();
+      final Throwable error = failure.get();
+      if (error != null) {
+        Main.rethrow(error);
+      }
+      report();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } finally {
+      for (Stage stage : stages) {
+        stage.pool.shutdownNow();
+      }
+      for (ObjectInserter inserter : inserters) {
+        inserter.close();
+      }
+      readers.close();
+    }
+  }
+
+  private void report() {
+    final long elapsed = Math.max(1, System.nanoTime() - startTime);
+    for (int i = stages.size() - 1; i >= 0; --i) {
+      final Stage stage = stages.get(i);
+      log.info("  stage {}: threads: {}, items: {}, utilization: {}%", stage.name, stage.threads, stage.items.get(), stage.busy.get() * 100 / elapsed / stage.threads);
+    }
+  }
+
+  @FunctionalInterface
+  private interface Handler {
+    void handle(@NotNull Item item) throws IOException, InterruptedException;
+  }
+
+  private static final class Item {
+    @NotNull
+    private final TaskKey taskKey;
+    private long size;
+    private boolean passthrough;
+    private boolean cached;
+    @Nullable
+    private Meta meta;
+    @Nullable
+    private byte[] content;
+    private int permits;
+
+    private Item(@NotNull TaskKey taskKey) {
+      this.taskKey = taskKey;
+    }
+  }
+
+  private final class Stage {
+    @NotNull
+    private final String name;
+    private final int threads;
+    @Nullable
+    private final Stage next;
+    @NotNull
+    private final Handler handler;
+    @NotNull
+    private final BlockingQueue<Item> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    @NotNull
+    private final ExecutorService pool;
+    @NotNull
+    private final List<Future<?>> jobs = new ArrayList<>();
+    @NotNull
+    private final AtomicLong busy = new AtomicLong();
+    @NotNull
+    private final AtomicLong items = new AtomicLong();
+    private long lastBusy;
+
+    private Stage(@NotNull String name, int threads, boolean blocking, @Nullable Stage next, @NotNull Handler handler) {
+      this.name = name;
+      this.threads = Math.max(1, threads);
+      this.next = next;
+      this.handler = handler;
+      // CPU bound stages always use platform threads.
+      this.pool = blocking ? BlockingExecutors.newBlockingPool(this.threads) : Executors.newFixedThreadPool(this.threads);
+      stages.add(this);
+      for (int i = 0; i < this.threads; ++i) {
+        jobs.add(pool.submit(this::run));
+      }
+    }
+
+    private void run() {
+      try {
+        while (true) {
+          final Item item = queue.take();
+          if (item == END) break;
+          final long start = System.nanoTime();
+          handler.handle(item);
+          busy.addAndGet(System.nanoTime() - start);
+          items.incrementAndGet();
+          if (next != null) {
+            next.put(item);
+          }
+        }
+      } catch (Throwable e) {
+        failure.compareAndSet(null, e);
+      }
+    }
+
+    private void put(@NotNull Item item) throws IOException, InterruptedException {
+      while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+        checkFailure();
+      }
+    }
+
+    private void checkFailure() throws IOException {
+      final Throwable error = failure.get();
+      if (error != null) {
+        throw new IOException("LFS pipeline is stopped", error);
+      }
+    }
+
+    private void finish() throws IOException, InterruptedException {
+      for (Future<?> job : jobs) {
+        if (failure.get() != null) break;
+        put(END);
+      }
+      for (Future<?> job : jobs) {
+        if (failure.get() != null) break;
+        try {
+          job.get();
+        } catch (ExecutionException e) {
+          failure.compareAndSet(null, e.getCause());
+        }
+      }
+    }
+  }
+}
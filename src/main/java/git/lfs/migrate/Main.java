@@ -3,12 +3,18 @@ package git.lfs.migrate;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import org.apache.http.HttpStatus;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.SSLContexts;
 import org.eclipse.jgit.errors.InvalidPatternException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.internal.storage.file.LockFile;
+import org.eclipse.jgit.internal.storage.file.RefDirectory;
 import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevTag;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.storage.pack.PackConfig;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.mapdb.DB;
@@ -18,23 +24,33 @@ import org.slf4j.LoggerFactory;
 import ru.bozaro.gitlfs.client.AuthHelper;
 import ru.bozaro.gitlfs.client.BatchUploader;
 import ru.bozaro.gitlfs.client.Client;
-import ru.bozaro.gitlfs.client.auth.AuthProvider;
 import ru.bozaro.gitlfs.client.auth.BasicAuthProvider;
 import ru.bozaro.gitlfs.client.exceptions.ForbiddenException;
 import ru.bozaro.gitlfs.client.exceptions.RequestException;
+import ru.bozaro.gitlfs.client.io.StreamProvider;
 import ru.bozaro.gitlfs.common.data.*;
 import ru.bozaro.gitlfs.common.data.Error;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.GeneralSecurityException;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Stream;
 
 /**
@@ -45,6 +61,7 @@ import java.util.stream.Stream;
 public class Main {
   @NotNull
   private static final Logger log = LoggerFactory.getLogger(Main.class);
+  private static final int SPILL_CHUNK_SIZE = 0x10000;
 
   public static void main(@NotNull String[] args) throws Exception {
     final CmdArgs cmd = new CmdArgs();
@@ -55,11 +72,12 @@ public class Main {
       return;
     }
     final long time = System.currentTimeMillis();
+    final HttpTransport transport = (cmd.lfs != null || cmd.git != null) ? createTransport(cmd) : null;
     final Client client;
     if (cmd.lfs != null) {
-      client = createClient(new BasicAuthProvider(URI.create(cmd.lfs)), cmd);
+      client = new Client(new BasicAuthProvider(URI.create(cmd.lfs)), transport.getHttpClient());
     } else if (cmd.git != null) {
-      client = createClient(AuthHelper.create(cmd.git), cmd);
+      client = new Client(AuthHelper.create(cmd.git), transport.getHttpClient());
     } else {
       client = null;
     }
@@ -72,6 +90,39 @@ public class Main {
       }
       return;
     }
+    if (BlockingExecutors.setVirtual(cmd.virtualThreads)) {
+      log.info("Using virtual threads for blocking I/O");
+    }
+    if (cmd.extractArchive != null) {
+      if (cmd.dst == null) {
+        log.error("Destination repository is not defined.");
+        return;
+      }
+      log.info("Extracting LFS archive...");
+      log.info("  extracted objects: {}", LfsArchive.extract(cmd.extractArchive, cmd.dst));
+      return;
+    }
+    if (cmd.uploadArchive != null) {
+      if (client == null) {
+        log.error("Git LFS server is not defined.");
+        return;
+      }
+      uploadArchive(cmd.uploadArchive, client, transport, cmd);
+      return;
+    }
+    if (cmd.src == null || cmd.dst == null) {
+      log.error("Source and destination repositories are required.");
+      jc.usage();
+      return;
+    }
+    if (cmd.fastImport != null && cmd.incremental) {
+      log.error("Incremental conversion doesn't support fast-import stream output.");
+      return;
+    }
+    if (cmd.incremental && cmd.lfsArchive && client == null) {
+      log.error("Incremental conversion doesn't support LFS archive.");
+      return;
+    }
     String[] globs = cmd.globs.toArray(new String[cmd.globs.size()]);
     if (cmd.globFile != null) {
       globs = Stream.concat(Arrays.stream(globs),
@@ -80,8 +131,14 @@ public class Main {
               .filter(s -> !s.isEmpty())
       ).toArray(String[]::new);
     }
+    if (cmd.verify) {
+      if (verifyRepository(cmd, globs) > 0) {
+        System.exit(1);
+      }
+      return;
+    }
     try {
-      processRepository(cmd.src, cmd.dst, cmd.cache, client, cmd.writeThreads, cmd.uploadThreads, globs);
+      processRepository(cmd, client, transport, globs);
     } catch (ExecutionException e) {
       if (e.getCause() instanceof RequestException) {
         final RequestException cause = (RequestException) e.getCause();
@@ -93,16 +150,11 @@ public class Main {
   }
 
   @NotNull
-  private static Client createClient(@NotNull AuthProvider auth, @NotNull CmdArgs cmd) throws GeneralSecurityException {
-    final HttpClientBuilder httpBuilder = HttpClients.custom();
-    httpBuilder.setUserAgent("git-lfs-migrate");
-    if (cmd.noCheckCertificate) {
-      httpBuilder.setSSLHostnameVerifier((hostname, session) -> true);
-      httpBuilder.setSSLContext(SSLContexts.custom()
-          .loadTrustMaterial((chain, authType) -> true)
-          .build());
-    }
-    return new Client(auth, httpBuilder.build());
+  private static HttpTransport createTransport(@NotNull CmdArgs cmd) throws GeneralSecurityException {
+    // Batch API requests and object transfers can use different routes.
+    final int maxPerRoute = cmd.httpMaxPerRoute > 0 ? cmd.httpMaxPerRoute : cmd.uploadThreads + 1;
+    final int maxTotal = cmd.httpMaxTotal > 0 ? cmd.httpMaxTotal : maxPerRoute * 2;
+    return new HttpTransport(maxPerRoute, maxTotal, TimeUnit.SECONDS.toMillis(cmd.httpKeepAlive), cmd.httpSocketBuffer * 1024, cmd.httpRetries, cmd.httpRetryDelay, cmd.noCheckCertificate);
   }
 
   private static boolean checkLfsAuthenticate(@Nullable Client client) throws IOException {
@@ -143,40 +195,78 @@ public class Main {
     return false;
   }
 
-  public static void processRepository(@NotNull Path srcPath, @NotNull Path dstPath, @NotNull Path cachePath, @Nullable Client client, int writeThreads, int uploadThreads, @NotNull String... globs) throws IOException, InterruptedException, ExecutionException, InvalidPatternException {
-    removeDirectory(dstPath);
-    Files.createDirectories(dstPath);
+  public static void processRepository(@NotNull CmdArgs cmd, @Nullable Client client, @Nullable HttpTransport transport, @NotNull String... globs) throws IOException, InterruptedException, ExecutionException, InvalidPatternException {
+    final boolean incremental = cmd.incremental && Files.isDirectory(cmd.dst.resolve("objects"));
+    // Destination repository of fast-import stream is created by git fast-import.
+    final boolean fastImport = cmd.fastImport != null;
+    if (!incremental && !fastImport) {
+      removeDirectory(cmd.dst);
+    }
+    Files.createDirectories(cmd.dst);
 
     final Repository srcRepo = new FileRepositoryBuilder()
         .setMustExist(true)
-        .setGitDir(srcPath.toFile()).build();
+        .setGitDir(cmd.src.toFile()).build();
+    installPackCache(cmd, srcRepo);
     final Repository dstRepo = new FileRepositoryBuilder()
         .setMustExist(false)
-        .setGitDir(dstPath.toFile()).build();
+        .setGitDir(cmd.dst.toFile()).build();
 
-    try (DB cache = DBMaker.fileDB(cachePath.resolve("git-lfs-migrate.mapdb").toFile())
+    try (DB cache = DBMaker.fileDB(cmd.cache.resolve("git-lfs-migrate.mapdb").toFile())
         .fileMmapEnableIfSupported()
         .checksumHeaderBypass()
-        .make()) {
-      final GitConverter converter = new GitConverter(cache, dstPath, globs);
-      dstRepo.create(true);
+        .make();
+         LfsArchiveWriter archive = createArchiveWriter(cmd, client);
+         GitConverter converter = new GitConverter(cache, cmd.dst, globs, !cmd.noCheckTrees, archive)) {
+      if (incremental) {
+        log.info("Incremental conversion: reusing results of previous runs");
+      } else if (!fastImport) {
+        dstRepo.create(true);
+      }
+      final Map<String, Ref> allRefs = srcRepo.getRefDatabase().getRefs(RefDatabase.ALL);
+      final Map<String, Ref> refs = filterRefs(cmd, converter, srcRepo, allRefs);
+      // Result fingerprint depends on history limit.
+      converter.openResults(fastImport ? "fast-import:" + cmd.fastImport : client != null ? "upload:" + client.getAuthProvider().getAuth(Operation.Upload).getHref() : "local:" + cmd.dst.toAbsolutePath().normalize(), incremental ? dstRepo.getObjectDatabase() : null);
+      log.info("Converting refs: {}/{}", refs.size(), allRefs.size());
       // Load all revision list.
       ConcurrentMap<TaskKey, ObjectId> converted = new ConcurrentHashMap<>();
-      try (HttpUploader uploader = createHttpUploader(srcRepo, client, uploadThreads)) {
-        log.info("Converting object without dependencies in " + writeThreads + " threads...");
-        Deque<TaskKey> pass2 = processWithoutDependencies(converter, srcRepo, dstRepo, converted, uploader, writeThreads);
-        log.info("Converting object with dependencies in single thread...");
-        processSingleThread(converter, srcRepo, dstRepo, converted, uploader, pass2);
-      }
-
-      log.info("Recreating refs...");
-      for (Map.Entry<String, Ref> ref : srcRepo.getAllRefs().entrySet()) {
-        RefUpdate refUpdate = dstRepo.updateRef(ref.getKey());
-        final ObjectId oldId = ref.getValue().getObjectId();
-        final ObjectId newId = converted.get(new TaskKey(GitConverter.TaskType.Simple, "", oldId));
-        refUpdate.setNewObjectId(newId);
-        refUpdate.update();
-        log.info("  convert ref: {} -> {} ({})", oldId.getName(), newId.getName(), ref.getKey());
+      try (HttpUploader uploader = createHttpUploader(srcRepo, client, transport, cmd)) {
+        if (fastImport) {
+          log.info("Writing fast-import stream in topological order...");
+          try (FastImportWriter writer = new FastImportWriter(openFastImport(cmd.fastImport))) {
+            new StreamingConverter(converter, srcRepo, dstRepo, converted, uploader).convert(refs.values(), writer);
+            writer.finish(refs, converted);
+          }
+        } else if (cmd.streaming) {
+          log.info("Converting commits in topological order...");
+          new StreamingConverter(converter, srcRepo, dstRepo, converted, uploader).convert(refs.values());
+        } else {
+          final Path spillPath = cmd.spillDir == null ? null : Files.createTempDirectory(Files.createDirectories(cmd.spillDir), "git-lfs-migrate");
+          try (DiskTaskQueue diskPass2 = spillPath == null ? null : new DiskTaskQueue(spillPath, "pass2", SPILL_CHUNK_SIZE)) {
+            final TaskQueue pass2 = diskPass2 != null ? diskPass2 : TaskQueue.concurrent();
+            log.info("Converting object without dependencies in " + cmd.writeThreads + " threads...");
+            processWithoutDependencies(converter, srcRepo, dstRepo, refs.values(), converted, uploader, pass2, spillPath, cmd);
+            log.info("Converting object with dependencies in single thread...");
+            processSingleThread(converter, srcRepo, dstRepo, converted, uploader, pass2);
+          } finally {
+            if (spillPath != null) {
+              removeDirectory(spillPath);
+            }
+          }
+        }
+      }
+
+      if (!fastImport) {
+        log.info("Recreating refs...");
+        recreateRefs(refs, dstRepo, converted);
+      }
+      converter.completeResults();
+      if (cmd.gc) {
+        if (fastImport) {
+          log.warn("Repository optimization skipped: destination of fast-import stream is written by git");
+        } else {
+          optimizeRepository(dstRepo);
+        }
       }
     } finally {
       dstRepo.close();
@@ -184,17 +274,216 @@ public class Main {
     }
   }
 
+  /**
+   * Repack all objects with bitmap index and pack refs.
+   * <p>
+   * JGit writes objects reachable from branches into single pack with bitmap index and objects reachable
+   * only from other refs (tags) into second pack. Commit-graph file is not written: JGit doesn't support it.
+   */
+  private static void optimizeRepository(@NotNull Repository dstRepo) throws IOException {
+    final int threads = Runtime.getRuntime().availableProcessors();
+    log.info("Optimizing repository in {} threads...", threads);
+    final GC gc = new GC((FileRepository) dstRepo);
+    final PackConfig packConfig = new PackConfig(dstRepo);
+    packConfig.setThreads(threads);
+    packConfig.setBuildBitmaps(true);
+    gc.setPackConfig(packConfig);
+    // Unreachable objects are pruned with default grace period: conversion result cache of filtered out refs
+    // refers to them, and they can be reused by next incremental run.
+    try {
+      gc.gc();
+    } catch (ParseException e) {
+      throw new IOException(e);
+    }
+    final GC.RepoStatistics stats = gc.getStatistics();
+    log.info("  packed objects: {} in {} packs ({}), bitmaps: {}, loose objects: {}, packed refs: {}",
+        stats.numberOfPackedObjects, stats.numberOfPackFiles, ProgressReporter.formatBytes(stats.sizeOfPackedObjects), stats.numberOfBitmaps,
+        stats.numberOfLooseObjects, stats.numberOfPackedRefs);
+    // Commit-graph files are not supported by JGit.
+    log.info("  run 'git repack -adb' for single pack and 'git commit-graph write --reachable' for commit-graph file");
+  }
+
+  @NotNull
+  private static OutputStream openFastImport(@NotNull String path) throws IOException {
+    final OutputStream stream = path.equals("-") ? System.out : Files.newOutputStream(Paths.get(path));
+    return new BufferedOutputStream(stream, 0x10000);
+  }
+
+  /**
+   * Recreate all refs in single packed-refs file write instead of updating loose refs one by one.
+   */
+  static void recreateRefs(@NotNull Map<String, Ref> srcRefs, @NotNull Repository dstRepo, @NotNull Map<TaskKey, ObjectId> converted) throws IOException {
+    // Git expects packed refs sorted by bytes: UTF-8 byte order is the same as code point order.
+    final SortedMap<String, ObjectId> refs = new TreeMap<>(Main::compareCodePoints);
+    int skipped = 0;
+    for (Ref ref : srcRefs.values()) {
+      if (ref.isSymbolic()) continue;
+      final ObjectId oldId = ref.getObjectId();
+      final ObjectId newId = converted.get(new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, oldId));
+      if (newId == null) {
+        log.warn("  skip not converted ref: {} ({})", ref.getName(), oldId.getName());
+        skipped++;
+        continue;
+      }
+      log.debug("  convert ref: {} -> {} ({})", oldId.getName(), newId.getName(), ref.getName());
+      refs.put(ref.getName(), newId);
+    }
+    final LockFile lock = new LockFile(new File(dstRepo.getDirectory(), Constants.PACKED_REFS));
+    if (!lock.lock()) {
+      throw new IOException("Can't lock file: " + Constants.PACKED_REFS);
+    }
+    try (RevWalk revWalk = new RevWalk(dstRepo)) {
+      final StringBuilder packed = new StringBuilder();
+      packed.append(RefDirectory.PACKED_REFS_HEADER).append(RefDirectory.PACKED_REFS_PEELED).append(" fully-peeled sorted \n");
+      for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+        // Detached HEAD is not a packed ref.
+        if (ref.getKey().equals(Constants.HEAD)) continue;
+        packed.append(ref.getValue().name()).append(' ').append(ref.getKey()).append('\n');
+        final RevObject revObject = revWalk.parseAny(ref.getValue());
+        if (revObject instanceof RevTag) {
+          packed.append('^').append(revWalk.peel(revObject).name()).append('\n');
+        }
+      }
+      lock.write(packed.toString().getBytes(StandardCharsets.UTF_8));
+      if (!lock.commit()) {
+        throw new IOException("Can't write file: " + Constants.PACKED_REFS);
+      }
+    } finally {
+      lock.unlock();
+    }
+    dstRepo.getRefDatabase().refresh();
+    // Symbolic refs (HEAD).
+    for (Ref ref : srcRefs.values()) {
+      if (!ref.isSymbolic() || !refs.containsKey(ref.getTarget().getName())) continue;
+      final RefUpdate.Result result = dstRepo.updateRef(ref.getName(), true).link(ref.getTarget().getName());
+      if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FORCED && result != RefUpdate.Result.NO_CHANGE) {
+        throw new IOException("Can't link ref " + ref.getName() + " to " + ref.getTarget().getName() + ": " + result);
+      }
+    }
+    final Ref head = srcRefs.get(Constants.HEAD);
+    if (head != null && !head.isSymbolic() && refs.containsKey(Constants.HEAD)) {
+      final RefUpdate refUpdate = dstRepo.updateRef(Constants.HEAD, true);
+      refUpdate.setNewObjectId(refs.get(Constants.HEAD));
+      refUpdate.forceUpdate();
+    }
+    log.info("  converted refs: {}, skipped: {}", refs.size(), skipped);
+  }
+
+  static int compareCodePoints(@NotNull String a, @NotNull String b) {
+    int i = 0;
+    int j = 0;
+    while (i < a.length() && j < b.length()) {
+      final int ca = a.codePointAt(i);
+      final int cb = b.codePointAt(j);
+      if (ca != cb) {
+        return Integer.compare(ca, cb);
+      }
+      i += Character.charCount(ca);
+      j += Character.charCount(cb);
+    }
+    return Integer.compare(a.length() - i, b.length() - j);
+  }
+
+  private static void installPackCache(@NotNull CmdArgs cmd, @NotNull Repository srcRepo) {
+    // Keep JGit defaults untouched: window cache is process wide.
+    if (!cmd.packCacheAuto && cmd.packedGitLimit <= 0 && cmd.packedGitWindow <= 0 && cmd.deltaBaseCache <= 0 && cmd.packedGitMmap == null) {
+      return;
+    }
+    PackCache.install(srcRepo, cmd.packCacheAuto, cmd.packedGitLimit * WindowCacheConfig.MB, cmd.packedGitWindow * WindowCacheConfig.KB, cmd.deltaBaseCache * WindowCacheConfig.MB, cmd.packedGitMmap);
+  }
+
+  public static long verifyRepository(@NotNull CmdArgs cmd, @NotNull String... globs) throws IOException, InterruptedException, InvalidPatternException {
+    final Path lfsPath = Files.isDirectory(cmd.dst.resolve("lfs/objects")) ? cmd.dst : null;
+    try (Repository srcRepo = new FileRepositoryBuilder()
+        .setMustExist(true)
+        .setGitDir(cmd.src.toFile()).build();
+         Repository dstRepo = new FileRepositoryBuilder()
+             .setMustExist(true)
+             .setGitDir(cmd.dst.toFile()).build();
+         DB cache = DBMaker.memoryDB().make();
+         GitConverter converter = new GitConverter(cache, cmd.dst, globs)) {
+      installPackCache(cmd, srcRepo);
+      log.info("Verifying converted repository in {} threads...", Runtime.getRuntime().availableProcessors());
+      if (lfsPath == null) {
+        log.info("Local LFS storage not found: LFS objects check skipped");
+      }
+      try (GitVerifier verifier = new GitVerifier(converter, srcRepo, dstRepo, lfsPath, Runtime.getRuntime().availableProcessors())) {
+        final Map<String, Ref> srcRefs = filterRefs(cmd, converter, srcRepo, srcRepo.getRefDatabase().getRefs(RefDatabase.ALL));
+        return verifier.verify(srcRefs, dstRepo.getRefDatabase().getRefs(RefDatabase.ALL));
+      }
+    }
+  }
+
+  /**
+   * Filter converted refs and apply history limit to converter.
+   */
+  @NotNull
+  private static Map<String, Ref> filterRefs(@NotNull CmdArgs cmd, @NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Map<String, Ref> allRefs) throws IOException, InvalidPatternException {
+    final Map<String, Ref> refs = new RefFilter(cmd.includeRefs, cmd.excludeRefs).filter(allRefs);
+    if (cmd.depth <= 0 && cmd.since == null) {
+      return refs;
+    }
+    final HistoryLimit limit = new HistoryLimit(srcRepo, refs.values(), cmd.depth, cmd.since == null ? 0 : parseDate(cmd.since));
+    converter.setHistoryLimit(limit);
+    return limit.filter(srcRepo, refs);
+  }
+
+  /**
+   * Parse date (yyyy-MM-dd in UTC) or date with time (ISO-8601 with offset).
+   *
+   * @return Time in seconds.
+   */
+  static long parseDate(@NotNull String date) {
+    try {
+      return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+    } catch (DateTimeParseException ignored) {
+      return OffsetDateTime.parse(date).toEpochSecond();
+    }
+  }
+
+  @Nullable
+  private static LfsArchiveWriter createArchiveWriter(@NotNull CmdArgs cmd, @Nullable Client client) throws IOException {
+    if (!cmd.lfsArchive || client != null) {
+      return null;
+    }
+    return new LfsArchiveWriter(cmd.dst.resolve("lfs/archive"), cmd.lfsArchiveSegment * 1024 * 1024);
+  }
+
+  private static void uploadArchive(@NotNull Path archivePath, @NotNull Client client, @Nullable HttpTransport transport, @NotNull CmdArgs cmd) throws IOException, ExecutionException, InterruptedException {
+    final List<LfsArchive.Entry> entries = LfsArchive.readIndex(archivePath);
+    log.info("Uploading LFS archive objects: {}", entries.size());
+    try (HttpUploader uploader = new HttpUploader(null, client, transport, createMultipartUploader(client, transport, cmd), getUploadMinThreads(cmd), cmd.uploadThreads)) {
+      for (LfsArchive.Entry entry : entries) {
+        uploader.upload(new Meta(entry.getOid(), entry.getSize()), () -> LfsArchive.openStream(entry));
+      }
+    }
+    log.info("  uploaded objects: {}", entries.size());
+  }
+
+  @Nullable
+  private static HttpUploader createHttpUploader(@NotNull Repository repository, @Nullable Client client, @Nullable HttpTransport transport, @NotNull CmdArgs cmd) {
+    return client == null ? null : new HttpUploader(repository, client, transport, createMultipartUploader(client, transport, cmd), getUploadMinThreads(cmd), cmd.uploadThreads);
+  }
+
   @Nullable
-  private static HttpUploader createHttpUploader(@NotNull Repository repository, @Nullable Client client, int uploadThreads) {
-    return client == null ? null : new HttpUploader(repository, client, uploadThreads);
+  private static MultipartUploader createMultipartUploader(@NotNull Client client, @Nullable HttpTransport transport, @NotNull CmdArgs cmd) {
+    if (transport == null || cmd.multipartThreshold <= 0) {
+      return null;
+    }
+    return new MultipartUploader(client.getAuthProvider(), transport.getHttpClient(), cmd.multipartThreshold << 20, cmd.multipartRetries, cmd.httpRetryDelay);
   }
 
-  private static void processSingleThread(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Repository dstRepo, @NotNull Map<TaskKey, ObjectId> converted, @Nullable HttpUploader uploader, @NotNull Deque<TaskKey> queue) throws IOException {
-    try (ProgressReporter reporter = new ProgressReporter("processed", new AtomicLong(queue.size()), null)) {
+  private static int getUploadMinThreads(@NotNull CmdArgs cmd) {
+    return cmd.adaptiveUpload ? Math.min(cmd.uploadMinThreads, cmd.uploadThreads) : cmd.uploadThreads;
+  }
+
+  private static void processSingleThread(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Repository dstRepo, @NotNull Map<TaskKey, ObjectId> converted, @Nullable HttpUploader uploader, @NotNull TaskQueue queue) throws IOException {
+    try (ProgressReporter reporter = new ProgressReporter("processed", new AtomicLong(queue.size()), null, converter.getStats(), uploader)) {
       final ObjectInserter inserter = dstRepo.newObjectInserter();
       final ObjectReader reader = srcRepo.newObjectReader();
-      while (!queue.isEmpty()) {
-        final TaskKey taskKey = queue.pop();
+      while (true) {
+        final TaskKey taskKey = queue.poll();
+        if (taskKey == null) break;
         if (!converted.containsKey(taskKey)) {
           boolean taskReady = true;
           for (TaskKey depend : converter.convertTask(reader, taskKey).depends()) {
@@ -214,7 +503,7 @@ public class Main {
     }
   }
 
-  private static void removeDirectory(@NotNull Path path) throws IOException {
+  static void removeDirectory(@NotNull Path path) throws IOException {
     if (Files.exists(path)) {
       Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
         @Override
@@ -232,26 +521,27 @@ public class Main {
     }
   }
 
-  @NotNull
-  private static Deque<TaskKey> processWithoutDependencies(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Repository dstRepo, @NotNull ConcurrentMap<TaskKey, ObjectId> converted, @Nullable HttpUploader uploader, int threads) throws IOException, InterruptedException {
+  /**
+   * Convert tasks without dependencies and collect other tasks to second pass queue.
+   *
+   * @param spillPath   Directory for disk spilled discovery structures (null to keep them on heap).
+   * @param spillMemory Memory budget for disk spilled discovery structures.
+   */
+  private static void processWithoutDependencies(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Repository dstRepo, @NotNull Collection<Ref> refs, @NotNull ConcurrentMap<TaskKey, ObjectId> converted, @Nullable HttpUploader uploader, @NotNull TaskQueue pass2, @Nullable Path spillPath, @NotNull CmdArgs cmd) throws IOException, InterruptedException {
+    final long spillMemory = cmd.spillMemory * 1024 * 1024;
+    final int threads = cmd.writeThreads;
     AtomicLong total = new AtomicLong(0);
-    try (ProgressReporter reporter = new ProgressReporter("processed", total, null)) {
-      final Set<TaskKey> checked = new HashSet<>();
-      final Deque<TaskKey> pass2 = new ArrayDeque<>();
-      final Deque<TaskKey> queue = new ArrayDeque<>();
-      // Heads
-      for (Ref ref : srcRepo.getAllRefs().values()) {
-        final TaskKey taskKey = new TaskKey(GitConverter.TaskType.Simple, "", ref.getObjectId());
-        if (checked.add(taskKey)) {
-          queue.add(taskKey);
-        }
-      }
-
-      final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try (ProgressReporter reporter = new ProgressReporter("processed", total, ProgressReporter.estimate(srcRepo), converter.getStats(), uploader);
+         DiskTaskSet diskChecked = spillPath == null ? null : new DiskTaskSet(spillPath, spillMemory / 2);
+         DiskTaskQueue frontier = spillPath == null ? null : new DiskTaskQueue(spillPath, "frontier", SPILL_CHUNK_SIZE)) {
+      final TaskSet checked = diskChecked != null ? diskChecked : TaskSet.concurrent();
+      // Leave quarter of memory budget for scheduled tasks (about 256 bytes per task).
+      final long frontierLimit = Math.max(SPILL_CHUNK_SIZE, spillMemory / 4 / 256);
+      final ExecutorService pool = BlockingExecutors.newBlockingPool(threads);
       try {
         final AtomicBoolean done = new AtomicBoolean(false);
         final List<Future<?>> jobs = new ArrayList<>(threads);
-        final BlockingQueue<TaskKey> channel = new LinkedBlockingQueue<>();
+        final BlockingQueue<TaskKey> channel = spillPath == null ? new LinkedBlockingQueue<>() : new LinkedBlockingQueue<>(SPILL_CHUNK_SIZE);
         for (int i = 0; i < threads; ++i) {
           jobs.add(pool.submit(() -> {
             try {
@@ -272,37 +562,52 @@ public class Main {
             }
           }));
         }
-        final ObjectReader reader = srcRepo.newObjectReader();
-        while (!queue.isEmpty()) {
-          final TaskKey taskKey = queue.pop();
-          boolean withoutDepends = true;
-          for (TaskKey depend : converter.convertTask(reader, taskKey).depends()) {
-            withoutDepends = false;
-            if (checked.add(depend)) {
-              queue.add(depend);
+        try (LfsPipeline pipeline = cmd.pipeline ? new LfsPipeline(converter, srcRepo, dstRepo, converted, uploader, reporter::increment, cmd.readThreads, cmd.hashThreads, threads, cmd.pipelineMemory * 1024 * 1024) : null) {
+          reporter.setPipeline(pipeline);
+          // Walk object graph in all cores and feed ready tasks to writers in source pack order batches.
+          final PackOrder packOrder = new PackOrder(srcRepo, cmd.packOrderBatch, taskKey -> {
+            if (pipeline != null && taskKey.getType() == GitConverter.TaskType.UploadLfs) {
+              pipeline.add(taskKey);
+            } else {
+              putTask(channel, taskKey, jobs);
             }
-          }
-          if (withoutDepends) {
+          });
+          try (ObjectDiscovery discovery = new ObjectDiscovery(converter, srcRepo, taskKey -> {
             total.incrementAndGet();
-            channel.add(taskKey);
-          } else {
-            pass2.add(taskKey);
+            packOrder.accept(taskKey);
+          }, pass2, checked, frontier, frontierLimit, Runtime.getRuntime().availableProcessors())) {
+            // Heads
+            for (Ref ref : refs) {
+              if (ref.getObjectId() == null) continue;
+              discovery.add(new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, ref.getObjectId()));
+            }
+            discovery.await();
+            reporter.setDiscovered();
+            packOrder.flush();
+          } finally {
+            for (Future<?> ignored : jobs) {
+              putTask(channel, new TaskKey(GitConverter.TaskType.EndMark, PathTrie.NONE, ObjectId.zeroId()), jobs);
+            }
           }
-        }
-        for (Future<?> ignored : jobs) {
-          channel.add(new TaskKey(GitConverter.TaskType.EndMark, null, ObjectId.zeroId()));
-        }
-        for (Future<?> job : jobs) {
-          try {
-            job.get();
-          } catch (ExecutionException e) {
-            rethrow(e.getCause());
+          for (Future<?> job : jobs) {
+            try {
+              job.get();
+            } catch (ExecutionException e) {
+              rethrow(e.getCause());
+            }
           }
         }
       } finally {
         pool.shutdown();
       }
-      return pass2;
+    }
+  }
+
+  private static void putTask(@NotNull BlockingQueue<TaskKey> channel, @NotNull TaskKey taskKey, @NotNull List<Future<?>> jobs) throws IOException, InterruptedException {
+    while (!channel.offer(taskKey, 1, TimeUnit.SECONDS)) {
+      if (jobs.stream().allMatch(Future::isDone)) {
+        throw new IOException("All write threads are stopped");
+      }
     }
   }
 
@@ -316,13 +621,36 @@ public class Main {
     new EvilThrower<RuntimeException>().sneakyThrow(exception);
   }
 
+  /**
+   * LFS objects uploader.
+   * <p>
+   * Uploads are scheduled by size: the largest queued objects are started first, so they overlap with the rest
+   * of conversion instead of forming a long single-stream tail. Queued small objects are started together,
+   * so they are sent in dense batches.
+   */
   public static class HttpUploader implements GitConverter.Uploader, AutoCloseable {
+    /**
+     * Objects smaller than this size are sent in batches.
+     */
+    private static final long SMALL_OBJECT_SIZE = 1024 * 1024;
+    /**
+     * Batch API request object limit (see {@link ru.bozaro.gitlfs.client.BatchSettings}).
+     */
+    private static final int BATCH_SIZE = 100;
     @NotNull
-    private final ThreadLocal<ObjectReader> readers = new ThreadLocal<>();
+    private final Queue<ObjectReader> readers = new ConcurrentLinkedQueue<>();
     @NotNull
     private final ExecutorService pool;
-    @NotNull
+    @Nullable
     private final Repository repository;
+    @Nullable
+    private final HttpTransport transport;
+    @Nullable
+    private final AdaptiveLimiter limiter;
+    @Nullable
+    private final MultipartUploader multipart;
+    @NotNull
+    private final ExecutorService executor;
     @NotNull
     private final BatchUploader uploader;
     @NotNull
@@ -331,33 +659,139 @@ public class Main {
     private final AtomicInteger finished = new AtomicInteger();
     @NotNull
     private final AtomicInteger total = new AtomicInteger();
-
-    public HttpUploader(@NotNull Repository repository, @NotNull Client client, int threads) {
-      this.pool = Executors.newFixedThreadPool(threads);
-      this.uploader = new BatchUploader(client, pool);
+    @NotNull
+    private final LongAdder finishedBytes = new LongAdder();
+    @NotNull
+    private final LongAdder totalBytes = new LongAdder();
+    @NotNull
+    private final PriorityQueue<PendingUpload> pending = new PriorityQueue<>();
+    private final int window;
+    private long sequence;
+    /**
+     * Started upload slots: single large object or batch of small objects.
+     */
+    private int inFlight;
+
+    /**
+     * Create uploader.
+     *
+     * @param repository Repository for uploading objects by id (can be null if only stream uploads are used).
+     * @param transport  HTTP transport for connection pool statistics and adaptive concurrency feedback.
+     * @param multipart  Uploader for large objects (null for batch uploader only).
+     * @param minThreads Minimal concurrent upload count (concurrency is adaptive if less than maxThreads).
+     * @param maxThreads Maximal concurrent upload count.
+     */
+    public HttpUploader(@Nullable Repository repository, @NotNull Client client, @Nullable HttpTransport transport, @Nullable MultipartUploader multipart, int minThreads, int maxThreads) {
+      this.transport = transport;
+      this.multipart = multipart;
+      this.pool = BlockingExecutors.newBlockingPool(maxThreads);
+      if (transport != null && minThreads < maxThreads) {
+        limiter = new AdaptiveLimiter(minThreads, maxThreads);
+        transport.addListener(limiter);
+        this.executor = BlockingExecutors.limit(pool, limiter);
+      } else {
+        limiter = null;
+        this.executor = pool;
+      }
+      this.uploader = new BatchUploader(client, executor);
       this.repository = repository;
+      // Keep one slot queued, so upload threads don't wait for dispatching.
+      this.window = maxThreads + 1;
     }
 
     @Override
     public void upload(@NotNull ObjectId oid, @NotNull Meta meta) {
+      upload(meta, () -> {
+        // Upload tasks can run on short-living virtual threads, so readers are pooled instead of thread local.
+        ObjectReader reader = readers.poll();
+        if (reader == null) {
+          reader = Objects.requireNonNull(repository).newObjectReader();
+        }
+        try {
+          return reader.open(oid).openStream();
+        } finally {
+          readers.add(reader);
+        }
+      });
+    }
+
+    public void upload(@NotNull Meta meta, @NotNull StreamProvider provider) {
       total.incrementAndGet();
-      futures.add(uploader.upload(meta, () -> getReader().open(oid).openStream()).thenAccept((m) -> finished.incrementAndGet()));
+      totalBytes.add(meta.getSize());
+      final CompletableFuture<Void> result = new CompletableFuture<>();
+      futures.add(result);
+      synchronized (pending) {
+        pending.add(new PendingUpload(meta, provider, result, sequence++));
+      }
+      dispatch();
+    }
+
+    /**
+     * Start pending uploads while there are free slots.
+     */
+    private void dispatch() {
+      final List<List<PendingUpload>> slots = new ArrayList<>();
+      synchronized (pending) {
+        while (inFlight < window && !pending.isEmpty()) {
+          final List<PendingUpload> slot = new ArrayList<>();
+          slot.add(pending.poll());
+          // Queue is ordered by size: if head is small, all queued objects are small.
+          if (slot.get(0).meta.getSize() < SMALL_OBJECT_SIZE) {
+            while (slot.size() < BATCH_SIZE && !pending.isEmpty()) {
+              slot.add(pending.poll());
+            }
+          }
+          slots.add(slot);
+          inFlight++;
+        }
+      }
+      for (List<PendingUpload> slot : slots) {
+        final CompletableFuture<?>[] uploads = new CompletableFuture<?>[slot.size()];
+        for (int i = 0; i < uploads.length; ++i) {
+          final PendingUpload item = slot.get(i);
+          uploads[i] = startUpload(item.meta, item.provider).whenComplete((ignored, error) -> {
+            if (error != null) {
+              item.result.completeExceptionally(error);
+            } else {
+              finished.incrementAndGet();
+              finishedBytes.add(item.meta.getSize());
+              item.result.complete(null);
+            }
+          });
+        }
+        CompletableFuture.allOf(uploads).whenComplete((ignored, error) -> {
+          synchronized (pending) {
+            inFlight--;
+          }
+          dispatch();
+        });
+      }
     }
 
     @NotNull
-    private ObjectReader getReader() {
-      ObjectReader reader = readers.get();
-      if (reader == null) {
-        reader = repository.newObjectReader();
-        readers.set(reader);
+    private CompletableFuture<?> startUpload(@NotNull Meta meta, @NotNull StreamProvider provider) {
+      if (multipart != null && multipart.accept(meta)) {
+        return CompletableFuture.runAsync(() -> {
+          try {
+            multipart.upload(meta, provider);
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        }, executor);
       }
-      return reader;
+      return uploader.upload(meta, provider);
     }
 
     @Override
     public void close() throws ExecutionException, InterruptedException {
       CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
       pool.shutdown();
+      if (transport != null && limiter != null) {
+        transport.removeListener(limiter);
+      }
+      for (ObjectReader reader : readers) {
+        reader.close();
+      }
     }
 
     public int getTotal() {
@@ -367,58 +801,56 @@ public class Main {
     public int getFinished() {
       return finished.get();
     }
-  }
 
-  public static class ProgressReporter implements AutoCloseable {
-    private static final long DELAY = TimeUnit.SECONDS.toMillis(1);
-    @Nullable
-    private final AtomicLong total;
-    @NotNull
-    private final AtomicLong current = new AtomicLong(0);
-    @NotNull
-    private final AtomicLong lastTime = new AtomicLong(0);
-    @NotNull
-    private final String prefix;
-    @Nullable
-    private final HttpUploader uploader;
+    public long getTotalBytes() {
+      return totalBytes.sum();
+    }
 
-    public ProgressReporter(@NotNull String prefix, @Nullable AtomicLong total, @Nullable HttpUploader uploader) {
-      this.prefix = prefix;
-      this.total = total;
-      this.uploader = uploader;
+    public long getFinishedBytes() {
+      return finishedBytes.sum();
     }
 
-    public void increment() {
-      final long last = current.incrementAndGet();
-      final long oldTime = lastTime.get();
-      final long newTime = System.currentTimeMillis();
-      if (oldTime < newTime - DELAY) {
-        if (lastTime.compareAndSet(oldTime, newTime)) {
-          print(last);
-        }
+    @Nullable
+    public String getTransportStats() {
+      final String limit = limiter == null ? null : "upload limit: " + limiter.getLimit() + " (in flight: " + limiter.getInFlight() + ")";
+      if (transport == null) {
+        return limit;
       }
+      return limit == null ? transport.getPoolStats() : limit + ", " + transport.getPoolStats();
     }
 
-    @Override
-    public void close() {
-      print(current.get());
-    }
+    private static final class PendingUpload implements Comparable<PendingUpload> {
+      @NotNull
+      private final Meta meta;
+      @NotNull
+      private final StreamProvider provider;
+      @NotNull
+      private final CompletableFuture<Void> result;
+      private final long sequence;
+
+      private PendingUpload(@NotNull Meta meta, @NotNull StreamProvider provider, @NotNull CompletableFuture<Void> result, long sequence) {
+        this.meta = meta;
+        this.provider = provider;
+        this.result = result;
+        this.sequence = sequence;
+      }
 
-    private void print(long current) {
-      String message = "  " + prefix + ": " + current + (total != null ? "/" + total.get() : "");
-      if (uploader != null) {
-        message += ", uploaded: " + uploader.getFinished() + "/" + uploader.getTotal();
+      /**
+       * Larger objects first, same size objects in arrival order.
+       */
+      @Override
+      public int compareTo(@NotNull PendingUpload o) {
+        final int bySize = Long.compare(o.meta.getSize(), meta.getSize());
+        return bySize != 0 ? bySize : Long.compare(sequence, o.sequence);
       }
-      log.info(message);
     }
-
   }
 
   public static class CmdArgs {
-    @Parameter(names = {"-s", "--source"}, description = "Source repository", required = true)
+    @Parameter(names = {"-s", "--source"}, description = "Source repository (required for conversion and verification)")
     @NotNull
     private Path src;
-    @Parameter(names = {"-d", "--destination"}, description = "Destination repository", required = true)
+    @Parameter(names = {"-d", "--destination"}, description = "Destination repository (required for conversion, verification and archive extraction)")
     @NotNull
     private Path dst;
     @Parameter(names = {"-c", "--cache"}, description = "Source repository", required = false)
@@ -434,12 +866,94 @@ public class Main {
     private int writeThreads = 2;
     @Parameter(names = {"-u", "--upload-threads"}, description = "HTTP upload thread count", required = false)
     private int uploadThreads = 4;
+    @Parameter(names = {"--adaptive-upload"}, description = "Adapt concurrent upload count to LFS server capacity (between --upload-min-threads and --upload-threads)")
+    private boolean adaptiveUpload = false;
+    @Parameter(names = {"--upload-min-threads"}, description = "Minimal concurrent upload count for adaptive upload")
+    private int uploadMinThreads = 1;
+    @Parameter(names = {"--multipart-threshold"}, description = "Minimal LFS object size in megabytes for chunked resumable upload (0 to disable)")
+    private long multipartThreshold = 256;
+    @Parameter(names = {"--multipart-retries"}, description = "Retry count for every part of chunked upload")
+    private int multipartRetries = 5;
+    @Parameter(names = {"--http-max-per-route"}, description = "HTTP connection pool size per route (0 for upload thread count + 1)")
+    private int httpMaxPerRoute = 0;
+    @Parameter(names = {"--http-max-total"}, description = "HTTP connection pool total size (0 for twice the size per route)")
+    private int httpMaxTotal = 0;
+    @Parameter(names = {"--http-keep-alive"}, description = "HTTP connection keep-alive time in seconds (if not defined by server)")
+    private long httpKeepAlive = 30;
+    @Parameter(names = {"--http-socket-buffer"}, description = "HTTP socket buffer size in kilobytes (0 for system default)")
+    private int httpSocketBuffer = 0;
+    @Parameter(names = {"--http-retries"}, description = "HTTP retry count for throttled (429) and server error (5xx) responses")
+    private int httpRetries = 5;
+    @Parameter(names = {"--http-retry-delay"}, description = "HTTP retry base delay in milliseconds (doubled on every retry, Retry-After header has priority)")
+    private long httpRetryDelay = 500;
     @Parameter(names = {"--check-lfs"}, description = "Check LFS server settings and exit")
     private boolean checkLfs = false;
     @Parameter(names = {"--no-check-certificate"}, description = "Don't check the server certificate against the available certificate authorities")
     private boolean noCheckCertificate = false;
     @Parameter(names = {"--glob-file"}, description = "File containing glob patterns")
     private Path globFile = null;
+    @Parameter(names = {"--verify"}, description = "Verify converted destination repository against source repository and exit")
+    private boolean verify = false;
+    @Parameter(names = {"--no-check-trees"}, description = "Don't check every converted tree object (use --verify for whole result check)")
+    private boolean noCheckTrees = false;
+    @Parameter(names = {"--include-ref"}, description = "Convert only refs matching pattern (.gitignore syntax, can be repeated)")
+    @NotNull
+    private List<String> includeRefs = new ArrayList<>();
+    @Parameter(names = {"--exclude-ref"}, description = "Don't convert refs matching pattern (.gitignore syntax, can be repeated)")
+    @NotNull
+    private List<String> excludeRefs = new ArrayList<>();
+    @Parameter(names = {"--spill-dir"}, description = "Directory for disk spilled discovery structures (keep them on heap if not defined)")
+    @Nullable
+    private Path spillDir = null;
+    @Parameter(names = {"--spill-memory"}, description = "Memory budget for disk spilled discovery structures in megabytes (converted object id map is kept on heap: use --streaming to limit it)")
+    private long spillMemory = 256;
+    @Parameter(names = {"--streaming"}, description = "Convert commits one by one in topological order (memory usage depends on working tree size instead of history size)")
+    private boolean streaming = false;
+    @Parameter(names = {"--lfs-archive"}, description = "Write local LFS objects to tar-compatible segment files with index (lfs/archive) instead of lfs/objects")
+    private boolean lfsArchive = false;
+    @Parameter(names = {"--lfs-archive-segment"}, description = "LFS archive segment size in megabytes")
+    private long lfsArchiveSegment = 1024;
+    @Parameter(names = {"--extract-archive"}, description = "Extract LFS archive directory to destination repository LFS storage and exit")
+    @Nullable
+    private Path extractArchive = null;
+    @Parameter(names = {"--upload-archive"}, description = "Upload LFS archive directory to LFS server and exit")
+    @Nullable
+    private Path uploadArchive = null;
+    @Parameter(names = {"--virtual-threads"}, description = "Run uploads and blocking I/O on virtual threads with concurrency limited by thread count options (JDK 21+)")
+    private boolean virtualThreads = false;
+    @Parameter(names = {"--depth"}, description = "Convert only given count of latest commits of every ref (0 for whole history)")
+    private int depth = 0;
+    @Parameter(names = {"--since"}, description = "Convert only commits since date (yyyy-MM-dd or ISO-8601 date and time with offset)")
+    @Nullable
+    private String since = null;
+    @Parameter(names = {"--pack-cache-auto"}, description = "Size source pack window cache and delta base cache by heap size and total pack size")
+    private boolean packCacheAuto = false;
+    @Parameter(names = {"--packed-git-limit"}, description = "Source pack window cache size in megabytes (0 for default)")
+    private long packedGitLimit = 0;
+    @Parameter(names = {"--packed-git-window"}, description = "Source pack window size in kilobytes (power of two, 0 for default)")
+    private int packedGitWindow = 0;
+    @Parameter(names = {"--delta-base-cache"}, description = "Source delta base cache size in megabytes (0 for default)")
+    private long deltaBaseCache = 0;
+    @Parameter(names = {"--packed-git-mmap"}, description = "Use memory mapped source pack windows (true or false)", arity = 1)
+    @Nullable
+    private Boolean packedGitMmap = null;
+    @Parameter(names = {"--fast-import"}, description = "Write git fast-import stream to file (- for stdout) instead of destination repository objects (destination is used for local LFS storage)")
+    @Nullable
+    private String fastImport = null;
+    @Parameter(names = {"--gc"}, description = "Repack converted repository into delta compressed packs with bitmap index and pack refs after conversion (JGit writes separate packs for objects reachable from branches and from other refs and no commit-graph file: use 'git repack -adb' and 'git commit-graph write --reachable' for single pack with commit-graph)")
+    private boolean gc = false;
+    @Parameter(names = {"--incremental"}, description = "Keep existing destination repository and reuse tree and commit conversion results of previous runs from cache (cache and globs must be the same)")
+    private boolean incremental = false;
+    @Parameter(names = {"--pack-order-batch"}, description = "Count of tasks without dependencies sorted by source pack offset before conversion (0 for discovery order)")
+    private int packOrderBatch = SPILL_CHUNK_SIZE;
+    @Parameter(names = {"--pipeline"}, description = "Convert LFS objects in staged pipeline (separate read, hash, write and cache thread pools)")
+    private boolean pipeline = false;
+    @Parameter(names = {"--read-threads"}, description = "Pipeline read stage thread count")
+    private int readThreads = 2;
+    @Parameter(names = {"--hash-threads"}, description = "Pipeline hash stage thread count")
+    private int hashThreads = Runtime.getRuntime().availableProcessors();
+    @Parameter(names = {"--pipeline-memory"}, description = "Memory budget for LFS objects kept in pipeline queues in megabytes")
+    private long pipelineMemory = 64;
 
     @Parameter(description = "LFS file glob patterns")
     @NotNull
@@ -0,0 +1,501 @@
+package git.lfs.migrate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.bozaro.gitlfs.client.auth.AuthProvider;
+import ru.bozaro.gitlfs.client.io.StreamProvider;
+import ru.bozaro.gitlfs.common.data.Link;
+import ru.bozaro.gitlfs.common.data.Meta;
+import ru.bozaro.gitlfs.common.data.Operation;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Chunked and resumable uploader for large LFS objects.
+ * <p>
+ * Batch request offers {@code multipart-basic} transfer adapter before {@code basic} one. If server selects
+ * multipart transfer, object actions contain list of parts:
+ * <pre>
+ * "actions": {
+ *   "parts": [{"href": "...", "header": {...}, "pos": 0, "size": 67108864}, ...],
+ *   "commit": {"href": "...", "header": {...}},
+ *   "verify": {"href": "...", "header": {...}}
+ * }
+ * </pre>
+ * Every part is uploaded by separate PUT request and is retried on failure. After all parts are uploaded
+ * client sends part list with ETags (<code>{"oid": ..., "size": ..., "parts": [{"pos": ..., "size": ..., "etag": ...}]}</code>)
+ * to commit action. Server lists only missing parts in batch response, so failed upload is resumed
+ * by new batch request without sending already uploaded parts.
+ * <p>
+ * If server selects basic transfer, object is uploaded by single PUT request.
+ * <p>
+ * Object stream is reopened only if upload must continue from other position than the previous part end.
+ */
+public class MultipartUploader {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(MultipartUploader.class);
+  @NotNull
+  static final String TRANSFER_MULTIPART = "multipart-basic";
+  @NotNull
+  static final String TRANSFER_BASIC = "basic";
+  @NotNull
+  static final String MIME_LFS_JSON = "application/vnd.git-lfs+json";
+  private static final int MAX_RESUMES = 3;
+  private static final int BUFFER_SIZE = 0x10000;
+
+  @NotNull
+  private final ObjectMapper mapper = new ObjectMapper();
+  @NotNull
+  private final AuthProvider authProvider;
+  @NotNull
+  private final CloseableHttpClient http;
+  private final long threshold;
+  private final int retries;
+  @NotNull
+  private final HttpTransport.BackoffRetryStrategy backoff;
+
+  /**
+   * Create uploader.
+   *
+   * @param authProvider LFS server authentication provider.
+   * @param http         HTTP client.
+   * @param threshold    Minimal object size for this uploader (in bytes).
+   * @param retries      Retry count for every part.
+   * @param retryDelay   Base delay for exponential retry backoff (in milliseconds).
+   */
+  public MultipartUploader(@NotNull AuthProvider authProvider, @NotNull CloseableHttpClient http, long threshold, int retries, long retryDelay) {
+    this.authProvider = authProvider;
+    this.http = http;
+    this.threshold = threshold;
+    this.retries = retries;
+    this.backoff = new HttpTransport.BackoffRetryStrategy(retries, retryDelay);
+  }
+
+  /**
+   * @return True if object should be uploaded by this uploader.
+   */
+  public boolean accept(@NotNull Meta meta) {
+    return meta.getSize() >= threshold;
+  }
+
+  /**
+   * Upload object.
+   *
+   * @param meta     Object metadata.
+   * @param provider Object content.
+   */
+  public void upload(@NotNull Meta meta, @NotNull StreamProvider provider) throws IOException {
+    final Map<Long, ObjectNode> uploaded = new TreeMap<>();
+    try (PartReader reader = new PartReader(provider)) {
+      for (int resume = 0; ; ++resume) {
+        try {
+          final JsonNode response = postBatch(meta);
+          final JsonNode item = findObject(response, meta);
+          final JsonNode actions = item.has("actions") ? item.get("actions") : item.path("_links");
+          if (TRANSFER_MULTIPART.equals(response.path("transfer").asText(TRANSFER_BASIC))) {
+            uploadMultipart(meta, actions, reader, uploaded);
+          } else {
+            uploadBasic(meta, actions, reader);
+          }
+          return;
+        } catch (ResumableException e) {
+          if (resume >= MAX_RESUMES) {
+            throw e;
+          }
+          log.warn("LFS object {} upload failed ({}), resuming: {}/{}", meta.getOid(), e.getMessage(), resume + 1, MAX_RESUMES);
+        }
+      }
+    }
+  }
+
+  @NotNull
+  private JsonNode postBatch(@NotNull Meta meta) throws IOException {
+    final ObjectNode request = mapper.createObjectNode();
+    request.put("operation", "upload");
+    request.putArray("transfers").add(TRANSFER_MULTIPART).add(TRANSFER_BASIC);
+    request.putArray("objects").addObject()
+        .put("oid", meta.getOid())
+        .put("size", meta.getSize());
+    for (int pass = 0; ; ++pass) {
+      final Link auth = authProvider.getAuth(Operation.Upload);
+      final String base = auth.getHref().toString();
+      final HttpPost post = new HttpPost(URI.create(base + (base.endsWith("/") ? "" : "/") + "objects/batch"));
+      addHeaders(post, auth.getHeader());
+      post.setHeader(HttpHeaders.ACCEPT, MIME_LFS_JSON);
+      post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(request), ContentType.create(MIME_LFS_JSON)));
+      try (CloseableHttpResponse response = http.execute(post)) {
+        final int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_UNAUTHORIZED && pass == 0) {
+          authProvider.invalidateAuth(Operation.Upload, auth);
+          continue;
+        }
+        if (status != HttpStatus.SC_OK) {
+          throw new IOException("LFS batch request failed: " + response.getStatusLine());
+        }
+        return mapper.readTree(response.getEntity().getContent());
+      }
+    }
+  }
+
+  @NotNull
+  private static JsonNode findObject(@NotNull JsonNode response, @NotNull Meta meta) throws IOException {
+    for (JsonNode item : response.path("objects")) {
+      if (!meta.getOid().equals(item.path("oid").asText())) continue;
+      final JsonNode error = item.get("error");
+      if (error != null) {
+        throw new IOException("LFS server rejected object " + meta.getOid() + ": " + error.path("code").asInt() + " " + error.path("message").asText());
+      }
+      return item;
+    }
+    throw new IOException("LFS batch response doesn't contain object: " + meta.getOid());
+  }
+
+  private void uploadBasic(@NotNull Meta meta, @NotNull JsonNode actions, @NotNull PartReader reader) throws IOException {
+    final JsonNode upload = actions.get("upload");
+    if (upload == null) {
+      // Object is already uploaded.
+      return;
+    }
+    final String etag = putPart(upload, reader, 0, meta.getSize());
+    if (etag == null) {
+      throw new ResumableException("object upload failed");
+    }
+    postAction(actions.get("verify"), createMetaNode(meta));
+  }
+
+  private void uploadMultipart(@NotNull Meta meta, @NotNull JsonNode actions, @NotNull PartReader reader, @NotNull Map<Long, ObjectNode> uploaded) throws IOException {
+    final JsonNode parts = actions.path("parts");
+    final JsonNode commit = actions.get("commit");
+    if (parts.size() == 0 && commit == null) {
+      // Object is already uploaded.
+      return;
+    }
+    for (JsonNode part : parts) {
+      final long pos = part.path("pos").asLong(0);
+      final long size = part.has("size") ? part.get("size").asLong() : meta.getSize() - pos;
+      final String etag = putPart(part, reader, pos, size);
+      if (etag == null) {
+        throw new ResumableException("part at " + pos + " upload failed");
+      }
+      uploaded.put(pos, mapper.createObjectNode()
+          .put("pos", pos)
+          .put("size", size)
+          .put("etag", etag));
+    }
+    final ObjectNode body = createMetaNode(meta);
+    final ArrayNode list = body.putArray("parts");
+    uploaded.values().forEach(list::add);
+    postAction(commit, body);
+    postAction(actions.get("verify"), createMetaNode(meta));
+  }
+
+  /**
+   * Upload object part with retries.
+   *
+   * @return Part ETag (empty string if server doesn't return it) or null if all attempts failed.
+   */
+  @Nullable
+  private String putPart(@NotNull JsonNode action, @NotNull PartReader reader, long pos, long size) throws IOException {
+    for (int attempt = 1; ; ++attempt) {
+      final HttpPut put = new HttpPut(action.path("href").asText());
+      addHeaders(put, action.path("header"));
+      put.setEntity(new PartEntity(reader, pos, size));
+      String error;
+      try (CloseableHttpResponse response = http.execute(put)) {
+        final int status = response.getStatusLine().getStatusCode();
+        EntityUtils.consume(response.getEntity());
+        if (status / 100 == 2) {
+          final Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+          return etag == null ? "" : etag.getValue();
+        }
+        error = response.getStatusLine().toString();
+        // Expired or invalid link: retry is useless, new links are requested on resume.
+        if (status / 100 == 4 && status != HttpStatus.SC_REQUEST_TIMEOUT && status != 429) {
+          log.warn("LFS upload to {} failed at {}: {}", put.getURI().getHost(), pos, error);
+          return null;
+        }
+      } catch (InterruptedIOException e) {
+        throw e;
+      } catch (IOException e) {
+        error = e.toString();
+      }
+      if (attempt > retries) {
+        log.warn("LFS upload to {} failed at {}: {}", put.getURI().getHost(), pos, error);
+        return null;
+      }
+      final long delay = backoff.getBackoff(attempt);
+      log.warn("LFS upload to {} failed at {}: {}, retry {}/{} in {} ms", put.getURI().getHost(), pos, error, attempt, retries, delay);
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+  }
+
+  private void postAction(@Nullable JsonNode action, @NotNull JsonNode body) throws IOException {
+    if (action == null) {
+      return;
+    }
+    final HttpPost post = new HttpPost(action.path("href").asText());
+    addHeaders(post, action.path("header"));
+    post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(body), ContentType.create(MIME_LFS_JSON)));
+    try (CloseableHttpResponse response = http.execute(post)) {
+      EntityUtils.consume(response.getEntity());
+      if (response.getStatusLine().getStatusCode() / 100 != 2) {
+        throw new ResumableException("request to " + post.getURI() + " failed: " + response.getStatusLine());
+      }
+    }
+  }
+
+  @NotNull
+  private ObjectNode createMetaNode(@NotNull Meta meta) {
+    return mapper.createObjectNode()
+        .put("oid", meta.getOid())
+        .put("size", meta.getSize());
+  }
+
+  private static void addHeaders(@NotNull HttpUriRequest request, @NotNull JsonNode headers) {
+    final Iterator<Map.Entry<String, JsonNode>> fields = headers.fields();
+    while (fields.hasNext()) {
+      final Map.Entry<String, JsonNode> field = fields.next();
+      request.setHeader(field.getKey(), field.getValue().asText());
+    }
+  }
+
+  private static void addHeaders(@NotNull HttpUriRequest request, @Nullable Map<String, String> headers) {
+    if (headers != null) {
+      headers.forEach(request::setHeader);
+    }
+  }
+
+  /**
+   * Upload failure which can be continued by new batch request.
+   */
+  private static final class ResumableException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private ResumableException(@NotNull String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Sequential object reader: stream is reopened only on seeking.
+   */
+  private static final class PartReader implements Closeable {
+    @NotNull
+    private final StreamProvider provider;
+    @Nullable
+    private InputStream stream;
+    private long position;
+
+    private PartReader(@NotNull StreamProvider provider) {
+      this.provider = provider;
+    }
+
+    private void copy(@NotNull OutputStream output, long pos, long size) throws IOException {
+      InputStream input = stream;
+      if (input == null || position != pos) {
+        close();
+        input = provider.getStream();
+        stream = input;
+        position = 0;
+        skip(input, pos);
+      }
+      boolean success = false;
+      try {
+        final byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, size))];
+        long remaining = size;
+        while (remaining > 0) {
+          final int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+          if (read < 0) {
+            throw new EOFException("Unexpected end of LFS object stream");
+          }
+          output.write(buffer, 0, read);
+          position += read;
+          remaining -= read;
+        }
+        success = true;
+      } finally {
+        // Position is unknown after failure.
+        if (!success) {
+          close();
+        }
+      }
+    }
+
+    /**
+     * Open independent stream with object part content.
+     */
+    @NotNull
+    private InputStream open(long pos, long size) throws IOException {
+      final InputStream input = provider.getStream();
+      try {
+        skipFully(input, pos);
+      } catch (IOException e) {
+        input.close();
+        throw e;
+      }
+      return new PartStream(input, size);
+    }
+
+    private void skip(@NotNull InputStream input, long pos) throws IOException {
+      skipFully(input, pos - position);
+      position = pos;
+    }
+
+    private static void skipFully(@NotNull InputStream input, long count) throws IOException {
+      long remaining = count;
+      while (remaining > 0) {
+        long skipped = input.skip(remaining);
+        if (skipped <= 0) {
+          if (input.read() < 0) {
+            throw new EOFException("Unexpected end of LFS object stream");
+          }
+          skipped = 1;
+        }
+        remaining -= skipped;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      final InputStream input = stream;
+      stream = null;
+      if (input != null) {
+        input.close();
+      }
+    }
+  }
+
+  /**
+   * Object part stream: stops at part end.
+   */
+  private static final class PartStream extends FilterInputStream {
+    private long remaining;
+
+    private PartStream(@NotNull InputStream input, long size) {
+      super(input);
+      this.remaining = size;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      final int result = super.read();
+      if (result < 0) {
+        throw new EOFException("Unexpected end of LFS object stream");
+      }
+      --remaining;
+      return result;
+    }
+
+    @Override
+    public int read(@NotNull byte[] buffer, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      final int result = super.read(buffer, off, (int) Math.min(len, remaining));
+      if (result < 0) {
+        throw new EOFException("Unexpected end of LFS object stream");
+      }
+      remaining -= result;
+      return result;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+      final long result = super.skip(Math.min(count, remaining));
+      remaining -= result;
+      return result;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+
+  /**
+   * Object part request entity.
+   * <p>
+   * Entity is not repeatable: failed part upload is retried only by part upload loop with new entity, so HTTP client
+   * retries are not nested into part retries.
+   */
+  private static final class PartEntity extends AbstractHttpEntity {
+    @NotNull
+    private final PartReader reader;
+    private final long pos;
+    private final long size;
+
+    private PartEntity(@NotNull PartReader reader, long pos, long size) {
+      this.reader = reader;
+      this.pos = pos;
+      this.size = size;
+      setContentType(ContentType.APPLICATION_OCTET_STREAM.getMimeType());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      return false;
+    }
+
+    @Override
+    public long getContentLength() {
+      return size;
+    }
+
+    @NotNull
+    @Override
+    public InputStream getContent() throws IOException {
+      return reader.open(pos, size);
+    }
+
+    @Override
+    public void writeTo(@NotNull OutputStream output) throws IOException {
+      reader.copy(output, pos, size);
+    }
+
+    @Override
+    public boolean isStreaming() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Parallel object graph discovery.
+ * <p>
+ * Walks task dependencies in work-stealing pool. Tasks without dependencies are passed to leaf consumer
+ * as soon as they are found, other tasks are collected for the second pass.
+ * <p>
+ * If frontier queue is defined, tasks over frontier limit are stored in it instead of work-stealing pool
+ * and returned to pool after pool drains.
+ */
+public class ObjectDiscovery implements AutoCloseable {
+  @NotNull
+  private final GitConverter converter;
+  @NotNull
+  private final LeafConsumer leafs;
+  @NotNull
+  private final TaskQueue pass2;
+  @NotNull
+  private final TaskSet checked;
+  @Nullable
+  private final TaskQueue frontier;
+  private final long frontierLimit;
+  @NotNull
+  private final ThreadReaders readers;
+  @NotNull
+  private final ParallelWalker<TaskKey> walker;
+
+  /**
+   * Create discovery.
+   *
+   * @param converter     Converter.
+   * @param srcRepo       Source repository.
+   * @param leafs         Consumer for tasks without dependencies.
+   * @param pass2         Tasks with dependencies.
+   * @param checked       Concurrent visited task set.
+   * @param frontier      Concurrent queue for tasks over frontier limit (null if not limited).
+   * @param frontierLimit Maximum scheduled task count in work-stealing pool.
+   * @param threads       Thread count.
+   */
+  public ObjectDiscovery(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull LeafConsumer leafs, @NotNull TaskQueue pass2, @NotNull TaskSet checked, @Nullable TaskQueue frontier, long frontierLimit, int threads) {
+    this.converter = converter;
+    this.checked = checked;
+    this.frontier = frontier;
+    this.frontierLimit = frontierLimit;
+    this.readers = new ThreadReaders(srcRepo);
+    this.leafs = leafs;
+    this.pass2 = pass2;
+    this.walker = new ParallelWalker<>(this::discover, threads);
+  }
+
+  /**
+   * Add discovery root.
+   *
+   * @param taskKey Root task.
+   */
+  public void add(@NotNull TaskKey taskKey) {
+    if (checked.add(taskKey)) {
+      if (frontier != null && walker.getPending() >= frontierLimit) {
+        frontier.add(taskKey);
+      } else {
+        walker.add(taskKey);
+      }
+    }
+  }
+
+  /**
+   * Wait for all reachable tasks discovery.
+   */
+  public void await() throws IOException, InterruptedException {
+    while (true) {
+      walker.await();
+      if (frontier == null || frontier.isEmpty()) break;
+      for (long i = 0; i < frontierLimit; ++i) {
+        final TaskKey taskKey = frontier.poll();
+        if (taskKey == null) break;
+        walker.add(taskKey);
+      }
+    }
+  }
+
+  private void discover(@NotNull TaskKey taskKey) throws IOException, InterruptedException {
+    boolean withoutDepends = true;
+    for (TaskKey depend : converter.convertTask(readers.get(), taskKey).depends()) {
+      withoutDepends = false;
+      add(depend);
+    }
+    if (withoutDepends) {
+      if (taskKey.getType() == GitConverter.TaskType.UploadLfs && readers.get().has(taskKey.getObjectId())) {
+        // Object size is read from object header without inflating content.
+        converter.getStats().addExpected(readers.get().getObjectSize(taskKey.getObjectId(), Constants.OBJ_BLOB));
+      }
+      leafs.accept(taskKey);
+    } else {
+      pass2.add(taskKey);
+    }
+  }
+
+  @Override
+  public void close() {
+    walker.close();
+    readers.close();
+  }
+
+  @FunctionalInterface
+  public interface LeafConsumer {
+    void accept(@NotNull TaskKey taskKey) throws IOException, InterruptedException;
+  }
+}
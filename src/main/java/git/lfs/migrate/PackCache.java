@@ -0,0 +1,110 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pack access settings of source repository.
+ * <p>
+ * JGit window cache and delta base cache are process wide, so settings are installed once before conversion.
+ * Auto profile sizes caches by heap size and total pack size: heavily deltified history needs a large delta
+ * base cache, otherwise delta chains are resolved again for every object.
+ */
+public class PackCache {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(PackCache.class);
+  private static final int MB = WindowCacheConfig.MB;
+  /**
+   * Part of heap for pack windows in auto profile.
+   */
+  private static final int WINDOW_HEAP_RATIO = 4;
+  /**
+   * Part of heap for delta bases in auto profile.
+   */
+  private static final int DELTA_HEAP_RATIO = 8;
+  /**
+   * Window size of memory mapped packs in auto profile.
+   */
+  private static final int MMAP_WINDOW_SIZE = MB;
+
+  private PackCache() {
+  }
+
+  /**
+   * Create window cache config.
+   *
+   * @param auto           Use auto profile for values which are not defined explicitly.
+   * @param packedGitLimit Pack window cache size in bytes (0 for default).
+   * @param windowSize     Pack window size in bytes (0 for default).
+   * @param deltaBaseCache Delta base cache size in bytes (0 for default).
+   * @param mmap           Use memory mapped pack windows (null for default).
+   * @param heapSize       Maximum heap size.
+   * @param packSize       Total pack size of source repository.
+   */
+  @NotNull
+  public static WindowCacheConfig createConfig(boolean auto, long packedGitLimit, int windowSize, long deltaBaseCache, @Nullable Boolean mmap, long heapSize, long packSize) {
+    final WindowCacheConfig config = new WindowCacheConfig();
+    if (auto) {
+      // Memory mapped windows are out of heap: map whole packs if they don't fit into heap budget.
+      final boolean useMmap = mmap != null ? mmap : packSize > heapSize / WINDOW_HEAP_RATIO;
+      config.setPackedGitMMAP(useMmap);
+      if (useMmap) {
+        config.setPackedGitWindowSize(MMAP_WINDOW_SIZE);
+        config.setPackedGitLimit(Math.max(config.getPackedGitLimit(), packSize));
+      } else {
+        config.setPackedGitLimit(Math.max(config.getPackedGitLimit(), Math.min(packSize, heapSize / WINDOW_HEAP_RATIO)));
+      }
+      config.setDeltaBaseCacheLimit((int) Math.min(Integer.MAX_VALUE, Math.max(config.getDeltaBaseCacheLimit(), Math.min(packSize, heapSize / DELTA_HEAP_RATIO))));
+    } else if (mmap != null) {
+      config.setPackedGitMMAP(mmap);
+    }
+    if (windowSize > 0) {
+      config.setPackedGitWindowSize(windowSize);
+    }
+    if (packedGitLimit > 0) {
+      config.setPackedGitLimit(packedGitLimit);
+    }
+    if (deltaBaseCache > 0) {
+      config.setDeltaBaseCacheLimit((int) Math.min(Integer.MAX_VALUE, deltaBaseCache));
+    }
+    if (config.getPackedGitLimit() < config.getPackedGitWindowSize()) {
+      config.setPackedGitLimit(config.getPackedGitWindowSize());
+    }
+    return config;
+  }
+
+  /**
+   * Install window cache config for source repository.
+   */
+  public static void install(@NotNull Repository repository, boolean auto, long packedGitLimit, int windowSize, long deltaBaseCache, @Nullable Boolean mmap) {
+    final WindowCacheConfig config = createConfig(auto, packedGitLimit, windowSize, deltaBaseCache, mmap, Runtime.getRuntime().maxMemory(), getPackSize(repository));
+    log.info("Pack cache: window cache {} ({} windows{}), delta base cache {}",
+        ProgressReporter.formatBytes(config.getPackedGitLimit()),
+        ProgressReporter.formatBytes(config.getPackedGitWindowSize()),
+        config.isPackedGitMMAP() ? ", mmap" : "",
+        ProgressReporter.formatBytes(config.getDeltaBaseCacheLimit()));
+    config.install();
+  }
+
+  /**
+   * @return Total pack size of repository.
+   */
+  public static long getPackSize(@NotNull Repository repository) {
+    final ObjectDatabase database = repository.getObjectDatabase();
+    if (!(database instanceof ObjectDirectory)) {
+      return 0;
+    }
+    long packSize = 0;
+    for (PackFile pack : ((ObjectDirectory) database).getPacks()) {
+      packSize += pack.getPackFile().length();
+    }
+    return packSize;
+  }
+}
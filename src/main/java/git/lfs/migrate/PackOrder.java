@@ -0,0 +1,129 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Leaf task reordering by source pack position.
+ * <p>
+ * Discovery finds leaf tasks in breadth-first order, so blob reads jump across packs and evict delta bases.
+ * Tasks are collected into batches and every batch is passed on sorted by pack and offset. Delta base is
+ * always stored before its deltas in pack, so delta chains are read in order and delta base cache gets hits.
+ * Loose and not found objects follow packed objects in discovery order.
+ */
+public class PackOrder implements ObjectDiscovery.LeafConsumer {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(PackOrder.class);
+  private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingInt(entry -> entry.pack).thenComparingLong(entry -> entry.offset);
+
+  @NotNull
+  private final List<PackFile> packs;
+  private final int batchSize;
+  @NotNull
+  private final ObjectDiscovery.LeafConsumer consumer;
+  @NotNull
+  private final List<Entry> batch = new ArrayList<>();
+
+  /**
+   * Create reordering consumer.
+   *
+   * @param repository Source repository.
+   * @param batchSize  Maximum sorted task count (tasks are passed on as is if less than 2).
+   * @param consumer   Consumer for reordered tasks.
+   */
+  public PackOrder(@NotNull Repository repository, int batchSize, @NotNull ObjectDiscovery.LeafConsumer consumer) {
+    final ObjectDatabase database = repository.getObjectDatabase();
+    this.packs = database instanceof ObjectDirectory ? new ArrayList<>(((ObjectDirectory) database).getPacks()) : Collections.emptyList();
+    this.batchSize = packs.isEmpty() ? 0 : batchSize;
+    this.consumer = consumer;
+  }
+
+  @Override
+  public void accept(@NotNull TaskKey taskKey) throws IOException, InterruptedException {
+    if (batchSize <= 1) {
+      consumer.accept(taskKey);
+      return;
+    }
+    final Entry entry = locate(taskKey);
+    final List<Entry> ready;
+    synchronized (batch) {
+      batch.add(entry);
+      ready = batch.size() >= batchSize ? takeBatch() : null;
+    }
+    if (ready != null) {
+      pass(ready);
+    }
+  }
+
+  /**
+   * Pass collected tasks to consumer.
+   */
+  public void flush() throws IOException, InterruptedException {
+    final List<Entry> ready;
+    synchronized (batch) {
+      ready = takeBatch();
+    }
+    pass(ready);
+  }
+
+  /**
+   * Take collected tasks out of batch. Must be called under batch lock.
+   */
+  @NotNull
+  private List<Entry> takeBatch() {
+    final List<Entry> result = new ArrayList<>(batch);
+    batch.clear();
+    return result;
+  }
+
+  /**
+   * Pass tasks to consumer outside of batch lock: consumer may block on full pipeline queue.
+   */
+  private void pass(@NotNull List<Entry> entries) throws IOException, InterruptedException {
+    if (entries.isEmpty()) {
+      return;
+    }
+    entries.sort(ORDER);
+    log.debug("Pass {} tasks in pack order", entries.size());
+    for (Entry entry : entries) {
+      consumer.accept(entry.taskKey);
+    }
+  }
+
+  @NotNull
+  private Entry locate(@NotNull TaskKey taskKey) throws IOException {
+    final AnyObjectId id = taskKey.getObjectId();
+    for (int i = 0; i < packs.size(); ++i) {
+      final long offset = packs.get(i).getIndex().findOffset(id);
+      if (offset >= 0) {
+        return new Entry(taskKey, i, offset);
+      }
+    }
+    return new Entry(taskKey, packs.size(), 0);
+  }
+
+  private static final class Entry {
+    @NotNull
+    private final TaskKey taskKey;
+    private final int pack;
+    private final long offset;
+
+    private Entry(@NotNull TaskKey taskKey, int pack, long offset) {
+      this.taskKey = taskKey;
+      this.pack = pack;
+      this.offset = offset;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parallel graph walker on work-stealing pool.
+ * <p>
+ * Visitor can add new items from any thread. Items are never joined: graph depth is unbounded
+ * and join could overflow thread stack.
+ */
+public class ParallelWalker<T> implements AutoCloseable {
+  @NotNull
+  private final Visitor<T> visitor;
+  @NotNull
+  private final AtomicReference<Throwable> error = new AtomicReference<>();
+  @NotNull
+  private final AtomicLong pending = new AtomicLong();
+  @NotNull
+  private final ForkJoinPool pool;
+
+  public ParallelWalker(@NotNull Visitor<T> visitor, int threads) {
+    this.visitor = visitor;
+    this.pool = new ForkJoinPool(threads);
+  }
+
+  /**
+   * Schedule item visit.
+   *
+   * @param item Item.
+   */
+  public void add(@NotNull T item) {
+    pending.incrementAndGet();
+    final VisitTask task = new VisitTask(item);
+    if (ForkJoinTask.getPool() == pool) {
+      task.fork();
+    } else {
+      pool.execute(task);
+    }
+  }
+
+  /**
+   * Wait for all scheduled items visit.
+   */
+  public void await() throws IOException, InterruptedException {
+    synchronized (pending) {
+      while (pending.get() > 0 && error.get() == null) {
+        pending.wait(TimeUnit.SECONDS.toMillis(1));
+      }
+    }
+    final Throwable e = error.get();
+    if (e != null) {
+      pool.shutdownNow();
+      Main.rethrow(e);
+    }
+  }
+
+  public long getPending() {
+    return pending.get();
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+  }
+
+  @FunctionalInterface
+  public interface Visitor<T> {
+    void visit(@NotNull T item) throws IOException, InterruptedException;
+  }
+
+  private final class VisitTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    @NotNull
+    private final T item;
+
+    private VisitTask(@NotNull T item) {
+      this.item = item;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        if (error.get() == null) {
+          visitor.visit(item);
+        }
+      } catch (Throwable e) {
+        error.compareAndSet(null, e);
+      } finally {
+        if (pending.decrementAndGet() == 0 || error.get() != null) {
+          synchronized (pending) {
+            pending.notifyAll();
+          }
+        }
+      }
+    }
+  }
+}
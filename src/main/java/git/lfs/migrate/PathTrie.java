@@ -0,0 +1,129 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent interned path trie.
+ * <p>
+ * Every unique path is stored once as a node with parent node id and entry name, so tree task keys can
+ * refer to path by int node id. Full path string is built only on demand.
+ */
+public final class PathTrie {
+  /**
+   * Path id for tasks without path.
+   */
+  public static final int NONE = -1;
+  /**
+   * Path id of repository root (empty path).
+   */
+  public static final int ROOT = 0;
+
+  @NotNull
+  private final ConcurrentMap<Node, Integer> ids = new ConcurrentHashMap<>();
+  @NotNull
+  private volatile Node[] nodes = new Node[0x400];
+  private int size;
+
+  public PathTrie() {
+    nodes[ROOT] = new Node(NONE, "");
+    size = 1;
+  }
+
+  /**
+   * Get (or create) child node id.
+   *
+   * @param parent Parent node id.
+   * @param name   Entry name.
+   * @return Child node id.
+   */
+  public int child(int parent, @NotNull String name) {
+    return ids.computeIfAbsent(new Node(parent, name), this::register);
+  }
+
+  /**
+   * Get node parent id.
+   *
+   * @param id Node id.
+   * @return Parent node id ({@link #NONE} for root).
+   */
+  public int getParent(int id) {
+    return nodes[id].parent;
+  }
+
+  /**
+   * Get node entry name.
+   *
+   * @param id Node id.
+   * @return Entry name (empty for root).
+   */
+  @NotNull
+  public String getName(int id) {
+    return nodes[id].name;
+  }
+
+  /**
+   * Build full path string.
+   *
+   * @param id Node id.
+   * @return Full path: empty for root, "/"-separated and starting with "/" for other nodes.
+   */
+  @NotNull
+  public String getPath(int id) {
+    final Node[] snapshot = nodes;
+    final Deque<String> names = new ArrayDeque<>();
+    for (int i = id; i != ROOT; i = snapshot[i].parent) {
+      names.push(snapshot[i].name);
+    }
+    final StringBuilder result = new StringBuilder();
+    for (String name : names) {
+      result.append('/').append(name);
+    }
+    return result.toString();
+  }
+
+  /**
+   * @return Node count.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  private synchronized int register(@NotNull Node node) {
+    if (size == nodes.length) {
+      nodes = Arrays.copyOf(nodes, size * 2);
+    }
+    final int id = size++;
+    nodes[id] = node;
+    return id;
+  }
+
+  private static final class Node {
+    private final int parent;
+    @NotNull
+    private final String name;
+
+    private Node(int parent, @NotNull String name) {
+      this.parent = parent;
+      this.name = name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      final Node node = (Node) o;
+      return parent == node.parent && name.equals(node.name);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * parent + name.hashCode();
+    }
+  }
+}
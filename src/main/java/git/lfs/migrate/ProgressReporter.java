@@ -0,0 +1,341 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.lib.ObjectDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodical progress output with moving average rates and ETA.
+ * <p>
+ * Progress is printed by timer thread, so {@link #increment()} only updates striped counter.
+ */
+public class ProgressReporter implements AutoCloseable {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(ProgressReporter.class);
+  private static final long DELAY = TimeUnit.SECONDS.toMillis(1);
+  /**
+   * Time window of rate moving average.
+   */
+  private static final double RATE_WINDOW = TimeUnit.SECONDS.toNanos(30);
+  /**
+   * Pack file header and trailer checksum size.
+   */
+  private static final int PACK_OVERHEAD = 12 + 20;
+
+  @NotNull
+  private final String prefix;
+  @Nullable
+  private final AtomicLong total;
+  @NotNull
+  private final Estimate estimate;
+  @Nullable
+  private final ConversionStats stats;
+  @Nullable
+  private final Main.HttpUploader uploader;
+  @NotNull
+  private final LongAdder current = new LongAdder();
+  private volatile boolean discovered;
+  @Nullable
+  private volatile LfsPipeline pipeline;
+  @NotNull
+  private final ScheduledExecutorService timer;
+  @NotNull
+  private final Rate processedRate = new Rate();
+  @NotNull
+  private final Rate inflatedRate = new Rate();
+  @NotNull
+  private final Rate writtenRate = new Rate();
+  @NotNull
+  private final Rate uploadedRate = new Rate();
+  @NotNull
+  private final Rate sourceReadRate = new Rate();
+
+  /**
+   * Create reporter and start progress output.
+   *
+   * @param prefix   Progress line prefix.
+   * @param total    Total item count (can grow during processing).
+   * @param estimate Estimated total item count (null if unknown).
+   * @param stats    Conversion byte counters.
+   * @param uploader Uploader for upload progress.
+   */
+  public ProgressReporter(@NotNull String prefix, @Nullable AtomicLong total, @Nullable Estimate estimate, @Nullable ConversionStats stats, @Nullable Main.HttpUploader uploader) {
+    this.prefix = prefix;
+    this.total = total;
+    this.estimate = estimate != null ? estimate : Estimate.UNKNOWN;
+    this.stats = stats;
+    this.uploader = uploader;
+    this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "progress");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final long now = System.nanoTime();
+    processedRate.update(0, now);
+    if (stats != null) {
+      inflatedRate.update(stats.getInflated(), now);
+      writtenRate.update(stats.getWritten(), now);
+      sourceReadRate.update(stats.getSourceReadNanos(), now);
+    }
+    if (uploader != null) {
+      uploadedRate.update(uploader.getFinishedBytes(), now);
+    }
+    timer.scheduleWithFixedDelay(() -> print(false), DELAY, DELAY, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Estimate object count of repository by pack indexes and loose objects.
+   * <p>
+   * Compressed pack size is only logged: it includes commits, trees and non-LFS blobs, so it can't be compared
+   * with inflated LFS blob bytes.
+   */
+  @NotNull
+  public static Estimate estimate(@NotNull Repository repository) {
+    final ObjectDatabase database = repository.getObjectDatabase();
+    if (!(database instanceof ObjectDirectory)) {
+      return Estimate.UNKNOWN;
+    }
+    long objects = 0;
+    long packSize = 0;
+    int packs = 0;
+    for (PackFile pack : ((ObjectDirectory) database).getPacks()) {
+      try {
+        objects += pack.getIndex().getObjectCount();
+        // Pack data without header and trailer checksum: sum of packed object sizes by index offsets.
+        packSize += Math.max(0, pack.getPackFile().length() - PACK_OVERHEAD);
+        packs++;
+      } catch (IOException e) {
+        log.warn("Can't read pack index: {}", pack.getPackFile(), e);
+      }
+    }
+    long loose = 0;
+    long looseSize = 0;
+    final File[] fanout = ((ObjectDirectory) database).getDirectory().listFiles((dir, name) -> name.length() == 2);
+    if (fanout != null) {
+      for (File dir : fanout) {
+        final File[] files = dir.listFiles();
+        if (files == null) continue;
+        loose += files.length;
+        for (File file : files) {
+          looseSize += file.length();
+        }
+      }
+    }
+    log.info("Source repository: {} packed objects in {} packs ({}), {} loose objects ({})", objects, packs, formatBytes(packSize), loose, formatBytes(looseSize));
+    return new Estimate(objects + loose);
+  }
+
+  public void increment() {
+    current.increment();
+  }
+
+  /**
+   * Mark totals as exact: all items are discovered, so estimate is not used anymore.
+   */
+  public void setDiscovered() {
+    discovered = true;
+  }
+
+  /**
+   * Show stage utilization of LFS pipeline.
+   */
+  public void setPipeline(@Nullable LfsPipeline pipeline) {
+    this.pipeline = pipeline;
+  }
+
+  @Override
+  public void close() {
+    timer.shutdownNow();
+    print(true);
+  }
+
+  /**
+   * Print progress.
+   *
+   * @param last All items are processed: total is exact.
+   */
+  private void print(boolean last) {
+    log.info(format(last));
+  }
+
+  @NotNull
+  synchronized String format(boolean last) {
+    final long now = System.nanoTime();
+    final long processed = current.sum();
+    final StringBuilder message = new StringBuilder();
+    message.append("  ").append(prefix).append(": ").append(processed);
+    if (total != null) {
+      message.append('/').append(total.get());
+      // Total grows during discovery: use estimate while it is larger.
+      final long expected = last || discovered ? total.get() : Math.max(total.get(), estimate.objects);
+      if (expected > total.get()) {
+        message.append(" (estimated: ").append(expected).append(')');
+      }
+      appendRate(message, processedRate.update(processed, now), expected - processed, false);
+    } else {
+      appendRate(message, processedRate.update(processed, now), -1, false);
+    }
+    if (stats != null) {
+      final long inflated = stats.getInflated();
+      final long written = stats.getWritten();
+      // Uncompressed LFS blob sizes are summed by discovery: total is exact only after it.
+      final long expectedBytes = stats.getExpected();
+      final boolean exactBytes = last || discovered;
+      if (inflated > 0) {
+        message.append(", inflated: ");
+        appendBytes(message, inflated, expectedBytes, exactBytes);
+        appendRate(message, inflatedRate.update(inflated, now), exactBytes ? expectedBytes - inflated : -1, true);
+      }
+      if (written > 0) {
+        message.append(", written: ");
+        appendBytes(message, written, expectedBytes, exactBytes);
+        appendRate(message, writtenRate.update(written, now), exactBytes ? expectedBytes - written : -1, true);
+      }
+      final long sourceReads = stats.getSourceReads();
+      if (sourceReads > 0) {
+        // Read time per second is average count of threads busy with source reading.
+        final double busy = sourceReadRate.update(stats.getSourceReadNanos(), now) / TimeUnit.SECONDS.toNanos(1);
+        message.append(", source reads: ").append(sourceReads)
+            .append(String.format(" (%.1f s) [%.1f threads busy]", stats.getSourceReadNanos() / 1e9, busy));
+      }
+    }
+    final LfsPipeline lfsPipeline = pipeline;
+    if (lfsPipeline != null) {
+      message.append(", ").append(lfsPipeline.getUtilization());
+    }
+    if (uploader != null) {
+      final long uploaded = uploader.getFinishedBytes();
+      final long queued = uploader.getTotalBytes();
+      message.append(", uploaded: ").append(uploader.getFinished()).append('/').append(uploader.getTotal())
+          .append(" (").append(formatBytes(uploaded)).append('/').append(formatBytes(queued)).append(')');
+      appendRate(message, uploadedRate.update(uploaded, now), queued - uploaded, true);
+      final String transportStats = uploader.getTransportStats();
+      if (transportStats != null) {
+        message.append(", ").append(transportStats);
+      }
+    }
+    return message.toString();
+  }
+
+  /**
+   * Append byte counter.
+   *
+   * @param expected Expected total (zero if unknown).
+   * @param exact    Expected total doesn't grow anymore.
+   */
+  private static void appendBytes(@NotNull StringBuilder message, long current, long expected, boolean exact) {
+    message.append(formatBytes(current));
+    if (expected > 0) {
+      message.append('/').append(formatBytes(expected));
+      if (!exact) {
+        message.append(" (discovering)");
+      }
+    }
+  }
+
+  /**
+   * Append rate and ETA.
+   *
+   * @param rate      Rate per second.
+   * @param remaining Remaining amount (negative if unknown).
+   * @param bytes     Rate is in bytes.
+   */
+  private static void appendRate(@NotNull StringBuilder message, double rate, long remaining, boolean bytes) {
+    if (rate <= 0) {
+      return;
+    }
+    message.append(" [").append(bytes ? formatBytes((long) rate) : String.format("%.1f", rate)).append("/s");
+    if (remaining > 0) {
+      message.append(", ETA ").append(formatDuration((long) (remaining / rate)));
+    }
+    message.append(']');
+  }
+
+  @NotNull
+  static String formatBytes(long bytes) {
+    if (bytes < 1024) {
+      return bytes + " B";
+    }
+    final String units = "KMGTPE";
+    double value = bytes;
+    int unit = -1;
+    while (value >= 1024 && unit < units.length() - 1) {
+      value /= 1024;
+      unit++;
+    }
+    return String.format("%.1f %siB", value, units.charAt(unit));
+  }
+
+  @NotNull
+  static String formatDuration(long seconds) {
+    return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+  }
+
+  /**
+   * Estimated source repository size.
+   */
+  public static final class Estimate {
+    @NotNull
+    static final Estimate UNKNOWN = new Estimate(0);
+
+    private final long objects;
+
+    /**
+     * @param objects Object count.
+     */
+    public Estimate(long objects) {
+      this.objects = objects;
+    }
+
+    public long getObjects() {
+      return objects;
+    }
+  }
+
+  /**
+   * Exponential moving average of counter rate.
+   */
+  static final class Rate {
+    private long lastValue;
+    private long lastTime;
+    private double rate;
+
+    /**
+     * Update rate by new counter value.
+     *
+     * @param value Counter value.
+     * @param now   Current time in nanoseconds.
+     * @return Rate per second.
+     */
+    double update(long value, long now) {
+      if (lastTime == 0) {
+        lastValue = value;
+        lastTime = now;
+        return rate;
+      }
+      final long elapsed = now - lastTime;
+      if (elapsed <= 0) {
+        return rate;
+      }
+      final double current = (value - lastValue) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+      final double alpha = 1 - Math.exp(-elapsed / RATE_WINDOW);
+      rate = rate == 0 ? current : rate + (current - rate) * alpha;
+      lastValue = value;
+      lastTime = now;
+      return rate;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package git.lfs.migrate;
+
+import git.path.PathMatcher;
+import git.path.WildcardHelper;
+import org.eclipse.jgit.errors.InvalidPatternException;
+import org.eclipse.jgit.lib.Ref;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ref name filter by include and exclude patterns.
+ * <p>
+ * Patterns use .gitignore syntax, pattern matched with ref name prefix matches all nested refs
+ * (for example: "refs/pull" or "refs/pull/*" matches "refs/pull/1/head").
+ */
+public class RefFilter {
+  @NotNull
+  private final PathMatcher[] includes;
+  @NotNull
+  private final PathMatcher[] excludes;
+
+  public RefFilter(@NotNull Collection<String> includes, @NotNull Collection<String> excludes) throws InvalidPatternException {
+    this.includes = createMatchers(includes);
+    this.excludes = createMatchers(excludes);
+  }
+
+  @NotNull
+  private static PathMatcher[] createMatchers(@NotNull Collection<String> patterns) throws InvalidPatternException {
+    final PathMatcher[] matchers = new PathMatcher[patterns.size()];
+    int index = 0;
+    for (String pattern : patterns) {
+      matchers[index++] = WildcardHelper.createMatcher(pattern, false);
+    }
+    return matchers;
+  }
+
+  public boolean isMatch(@NotNull String refName) {
+    final String path = "/" + refName;
+    return (includes.length == 0 || isMatch(includes, path)) && !isMatch(excludes, path);
+  }
+
+  private static boolean isMatch(@NotNull PathMatcher[] matchers, @NotNull String path) {
+    for (PathMatcher matcher : matchers) {
+      if (WildcardHelper.isMatch(matcher, path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Filter refs. Symbolic refs are kept if target ref is kept.
+   *
+   * @param refs All refs.
+   * @return Matched refs.
+   */
+  @NotNull
+  public Map<String, Ref> filter(@NotNull Map<String, Ref> refs) {
+    final Map<String, Ref> result = new TreeMap<>();
+    for (Map.Entry<String, Ref> entry : refs.entrySet()) {
+      if (isMatch(entry.getValue().getLeaf().getName())) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,214 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming commit converter.
+ * <p>
+ * Walks commits in topological order and converts new trees and blobs of every commit as they appear.
+ * Only mappings reachable from commits with not yet converted children are kept in memory, so
+ * memory usage depends on working tree size instead of history size.
+ */
+public class StreamingConverter {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(StreamingConverter.class);
+  private static final int MIN_SWEEP_SIZE = 0x10000;
+
+  @NotNull
+  private final GitConverter converter;
+  @NotNull
+  private final Repository srcRepo;
+  @NotNull
+  private final Repository dstRepo;
+  @Nullable
+  private final GitConverter.Uploader uploader;
+  // Conversion result for ref objects.
+  @NotNull
+  private final Map<TaskKey, ObjectId> converted;
+  // Converted trees and blobs.
+  @NotNull
+  private final Map<TaskKey, ObjectId> objects = new HashMap<>();
+  // Tree entries for reachability check.
+  @NotNull
+  private final Map<TaskKey, List<TaskKey>> children = new HashMap<>();
+  // Converted commits with not converted children.
+  @NotNull
+  private final Map<ObjectId, ObjectId> commits = new HashMap<>();
+  // Root trees of commits with not converted children.
+  @NotNull
+  private final Map<ObjectId, TaskKey> roots = new HashMap<>();
+  @NotNull
+  private final GitConverter.ConvertResolver resolver = this::getConverted;
+  private final int minSweepSize;
+  private int sweepSize;
+
+  public StreamingConverter(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Repository dstRepo, @NotNull Map<TaskKey, ObjectId> converted, @Nullable GitConverter.Uploader uploader) {
+    this(converter, srcRepo, dstRepo, converted, uploader, MIN_SWEEP_SIZE);
+  }
+
+  StreamingConverter(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Repository dstRepo, @NotNull Map<TaskKey, ObjectId> converted, @Nullable GitConverter.Uploader uploader, int minSweepSize) {
+    this.converter = converter;
+    this.srcRepo = srcRepo;
+    this.dstRepo = dstRepo;
+    this.converted = converted;
+    this.uploader = uploader;
+    this.minSweepSize = minSweepSize;
+    this.sweepSize = minSweepSize;
+  }
+
+  /**
+   * @return Count of kept object and commit mappings.
+   */
+  int getRetained() {
+    return objects.size() + commits.size();
+  }
+
+  /**
+   * Convert all objects reachable from refs.
+   *
+   * @param refs Source refs.
+   */
+  public void convert(@NotNull Collection<Ref> refs) throws IOException {
+    try (ObjectInserter inserter = dstRepo.newObjectInserter()) {
+      convert(refs, inserter);
+    }
+  }
+
+  /**
+   * Convert all objects reachable from refs.
+   *
+   * @param refs     Source refs.
+   * @param inserter Destination object inserter.
+   */
+  public void convert(@NotNull Collection<Ref> refs, @NotNull ObjectInserter inserter) throws IOException {
+    try (ObjectReader reader = srcRepo.newObjectReader();
+         RevWalk revWalk = new RevWalk(reader)) {
+      // Commit bodies are parsed again on conversion.
+      revWalk.setRetainBody(false);
+      revWalk.sort(RevSort.TOPO);
+      revWalk.sort(RevSort.REVERSE, true);
+      final Set<ObjectId> heads = new HashSet<>();
+      for (Ref ref : refs) {
+        if (ref.getObjectId() == null || !reader.has(ref.getObjectId())) continue;
+        final RevObject revObject = revWalk.peel(revWalk.parseAny(ref.getObjectId()));
+        if (revObject instanceof RevCommit) {
+          heads.add(revObject.copy());
+          revWalk.markStart((RevCommit) revObject);
+        }
+      }
+      // Count children for releasing converted commits.
+      final List<RevCommit> order = new ArrayList<>();
+      final Map<ObjectId, Integer> remaining = new HashMap<>();
+      final HistoryLimit limit = converter.getHistoryLimit();
+      for (RevCommit commit : revWalk) {
+        if (limit != null && !limit.isIncluded(commit)) continue;
+        order.add(commit);
+        for (RevCommit parent : commit.getParents()) {
+          remaining.merge(parent, 1, Integer::sum);
+        }
+      }
+      log.info("Found {} commits", order.size());
+
+      try (ProgressReporter reporter = new ProgressReporter("commits", new AtomicLong(order.size()), null, converter.getStats(), null)) {
+        for (RevCommit commit : order) {
+          final TaskKey commitKey = new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, commit);
+          final GitConverter.ConvertTask task = converter.convertTask(reader, commitKey);
+          for (TaskKey depend : task.depends()) {
+            resolve(reader, inserter, depend);
+          }
+          final ObjectId newId = task.convert(dstRepo, inserter, resolver, uploader);
+          if (heads.contains(commit)) {
+            converted.put(commitKey, newId);
+          }
+          if (remaining.containsKey(commit)) {
+            commits.put(commit.copy(), newId);
+            roots.put(commit.copy(), new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, commit.getTree()));
+          }
+          for (RevCommit parent : commit.getParents()) {
+            if (remaining.merge(parent, -1, Integer::sum) == 0) {
+              remaining.remove(parent);
+              commits.remove(parent);
+              roots.remove(parent);
+            }
+          }
+          sweep(inserter);
+          reporter.increment();
+        }
+      }
+      // Annotated tags and refs to non-commit objects.
+      for (Ref ref : refs) {
+        if (ref.getObjectId() == null) continue;
+        final TaskKey refKey = new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, ref.getObjectId());
+        if (!converted.containsKey(refKey)) {
+          converted.put(refKey, resolve(reader, inserter, refKey));
+        }
+      }
+      inserter.flush();
+    }
+  }
+
+  @NotNull
+  private ObjectId resolve(@NotNull ObjectReader reader, @NotNull ObjectInserter inserter, @NotNull TaskKey key) throws IOException {
+    ObjectId id = findConverted(key);
+    if (id != null) return id;
+    final GitConverter.ConvertTask task = converter.convertTask(reader, key);
+    final List<TaskKey> depends = new ArrayList<>();
+    for (TaskKey depend : task.depends()) {
+      resolve(reader, inserter, depend);
+      depends.add(depend);
+    }
+    id = task.convert(dstRepo, inserter, resolver, uploader);
+    objects.put(key, id);
+    if (!depends.isEmpty()) {
+      children.put(key, depends);
+    }
+    return id;
+  }
+
+  @Nullable
+  private ObjectId findConverted(@NotNull TaskKey key) {
+    ObjectId id = objects.get(key);
+    if (id == null) id = converted.get(key);
+    if (id == null && key.getType() == GitConverter.TaskType.Simple) id = commits.get(key.getObjectId());
+    return id;
+  }
+
+  @NotNull
+  private ObjectId getConverted(@NotNull TaskKey key) {
+    return Objects.requireNonNull(findConverted(key), key::toString);
+  }
+
+  /**
+   * Remove mappings unreachable from commits with not converted children.
+   * Runs only when mapping count doubles, so it's amortized constant time per object.
+   */
+  private void sweep(@NotNull ObjectInserter inserter) throws IOException {
+    if (objects.size() < sweepSize) return;
+    if (inserter instanceof FastImportWriter) {
+      ((FastImportWriter) inserter).retain(commits.values());
+    }
+    final Set<TaskKey> alive = new HashSet<>();
+    final Deque<TaskKey> queue = new ArrayDeque<>(roots.values());
+    while (!queue.isEmpty()) {
+      final TaskKey key = queue.pop();
+      if (alive.add(key)) {
+        queue.addAll(children.getOrDefault(key, Collections.emptyList()));
+      }
+    }
+    objects.keySet().retainAll(alive);
+    children.keySet().retainAll(alive);
+    sweepSize = Math.max(minSweepSize, objects.size() * 2);
+  }
+}
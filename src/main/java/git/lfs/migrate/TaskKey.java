@@ -2,12 +2,11 @@ package git.lfs.migrate;
 
 import org.eclipse.jgit.lib.ObjectId;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-
-import java.util.Objects;
 
 /**
  * Key of converter task.
+ * <p>
+ * Path is stored as {@link PathTrie} node id.
  *
  * @author Artem V. Navrotskiy <bozaro@users.noreply.github.com>
  */
@@ -17,14 +16,13 @@ public final class TaskKey {
   private final GitConverter.TaskType type;
   @NotNull
   private final ObjectId objectId;
-  @Nullable
-  private final String path;
+  private final int pathId;
 
-  public TaskKey(@NotNull GitConverter.TaskType type, @Nullable String path, @NotNull ObjectId objectId) {
+  public TaskKey(@NotNull GitConverter.TaskType type, int pathId, @NotNull ObjectId objectId) {
     this.type = type;
-    this.path = path;
+    this.pathId = pathId;
     this.objectId = objectId.copy();
-    if (type.needPath() == (path == null)) {
+    if (type.needPath() == (pathId == PathTrie.NONE)) {
       throw new IllegalStateException();
     }
   }
@@ -39,9 +37,8 @@ public final class TaskKey {
     return objectId;
   }
 
-  @Nullable
-  public String getPath() {
-    return path;
+  public int getPathId() {
+    return pathId;
   }
 
   @Override
@@ -52,22 +49,20 @@ public final class TaskKey {
     TaskKey taskKey = (TaskKey) o;
 
     return (type == taskKey.type)
-        && objectId.equals(taskKey.objectId)
-        && Objects.equals(path, taskKey.path);
+        && (pathId == taskKey.pathId)
+        && objectId.equals(taskKey.objectId);
   }
 
   @Override
   public int hashCode() {
     int result = type.hashCode();
     result = 31 * result + objectId.hashCode();
-    if (path != null) {
-      result = 31 * result + path.hashCode();
-    }
+    result = 31 * result + pathId;
     return result;
   }
 
   @Override
   public String toString() {
-    return type + ":" + objectId.name() + (path == null ? "" : " (" + path + ")");
+    return type + ":" + objectId.name() + (pathId == PathTrie.NONE ? "" : " (path #" + pathId + ")");
   }
 }
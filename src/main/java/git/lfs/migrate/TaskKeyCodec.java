@@ -0,0 +1,66 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary TaskKey format for disk spilled structures.
+ * <p>
+ * Path is stored as {@link PathTrie} node id, so data is valid only while the converter is alive.
+ */
+public final class TaskKeyCodec {
+  /**
+   * Fingerprint size in longs: type, path id and object id.
+   */
+  public static final int FINGERPRINT_LONGS = 4;
+  @NotNull
+  private static final GitConverter.TaskType[] TYPES = GitConverter.TaskType.values();
+
+  private TaskKeyCodec() {
+  }
+
+  public static void write(@NotNull DataOutput output, @NotNull TaskKey key) throws IOException {
+    output.writeByte(key.getType().ordinal());
+    final byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+    key.getObjectId().copyRawTo(raw, 0);
+    output.write(raw);
+    output.writeInt(key.getPathId());
+  }
+
+  @NotNull
+  public static TaskKey read(@NotNull DataInput input) throws IOException {
+    final GitConverter.TaskType type = TYPES[input.readByte()];
+    final byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+    input.readFully(raw);
+    final int pathId = input.readInt();
+    return new TaskKey(type, pathId, ObjectId.fromRaw(raw));
+  }
+
+  /**
+   * Fixed size exact key representation. First long is never zero.
+   *
+   * @param key Task key.
+   * @return Fingerprint with {@link #FINGERPRINT_LONGS} size.
+   */
+  @NotNull
+  public static long[] fingerprint(@NotNull TaskKey key) {
+    final ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_LONGS * 8);
+    buffer.putInt(key.getType().ordinal() + 1);
+    buffer.putInt(key.getPathId());
+    final byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+    key.getObjectId().copyRawTo(raw, 0);
+    buffer.put(raw);
+    buffer.rewind();
+    final long[] result = new long[FINGERPRINT_LONGS];
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = buffer.getLong();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,56 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Concurrent FIFO task queue: supports only adding and polling tasks, so content can be kept on disk.
+ */
+public interface TaskQueue {
+  void add(@NotNull TaskKey taskKey);
+
+  /**
+   * Remove queue head.
+   *
+   * @return Queue head (null if queue is empty).
+   */
+  @Nullable
+  TaskKey poll();
+
+  boolean isEmpty();
+
+  long size();
+
+  /**
+   * Create heap task queue.
+   */
+  @NotNull
+  static TaskQueue concurrent() {
+    final Queue<TaskKey> queue = new ConcurrentLinkedDeque<>();
+    return new TaskQueue() {
+      @Override
+      public void add(@NotNull TaskKey taskKey) {
+        queue.add(taskKey);
+      }
+
+      @Nullable
+      @Override
+      public TaskKey poll() {
+        return queue.poll();
+      }
+
+      @Override
+      public boolean isEmpty() {
+        return queue.isEmpty();
+      }
+
+      @Override
+      public long size() {
+        return queue.size();
+      }
+    };
+  }
+}
@@ -0,0 +1,49 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent visited task set: supports only adding and checking tasks, so content can be kept on disk.
+ */
+public interface TaskSet {
+  /**
+   * Add task.
+   *
+   * @return False if task is already added.
+   */
+  boolean add(@NotNull TaskKey taskKey);
+
+  boolean contains(@NotNull TaskKey taskKey);
+
+  /**
+   * Added task count.
+   */
+  long size();
+
+  /**
+   * Create heap task set.
+   */
+  @NotNull
+  static TaskSet concurrent() {
+    final Set<TaskKey> set = ConcurrentHashMap.newKeySet();
+    return new TaskSet() {
+      @Override
+      public boolean add(@NotNull TaskKey taskKey) {
+        return set.add(taskKey);
+      }
+
+      @Override
+      public boolean contains(@NotNull TaskKey taskKey) {
+        return set.contains(taskKey);
+      }
+
+      @Override
+      public long size() {
+        return set.size();
+      }
+    };
+  }
+}
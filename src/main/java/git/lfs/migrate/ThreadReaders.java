@@ -0,0 +1,42 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Per-thread object readers for repository.
+ */
+public class ThreadReaders implements AutoCloseable {
+  @NotNull
+  private final Repository repository;
+  @NotNull
+  private final Queue<ObjectReader> readers = new ConcurrentLinkedQueue<>();
+  @NotNull
+  private final ThreadLocal<ObjectReader> threadReader = new ThreadLocal<>();
+
+  public ThreadReaders(@NotNull Repository repository) {
+    this.repository = repository;
+  }
+
+  @NotNull
+  public ObjectReader get() {
+    ObjectReader reader = threadReader.get();
+    if (reader == null) {
+      reader = repository.newObjectReader();
+      threadReader.set(reader);
+      readers.add(reader);
+    }
+    return reader;
+  }
+
+  @Override
+  public void close() {
+    for (ObjectReader reader : readers) {
+      reader.close();
+    }
+  }
+}
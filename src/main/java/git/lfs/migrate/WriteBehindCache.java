@@ -0,0 +1,192 @@
+package git.lfs.migrate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent in-memory layer in front of persistent map with asynchronous write-behind.
+ * <p>
+ * Writer threads only put values to concurrent pending map. Single background thread moves pending values
+ * to persistent map and commits them: under load every commit covers all values added during previous one,
+ * so writer threads are not serialized on persistent map locks and commits. Values are visible for
+ * {@link #get(Object)} right after put.
+ * <p>
+ * Pending value count is bounded: if background thread falls behind, {@link #put(Object, Object)} waits for it.
+ */
+public class WriteBehindCache<K, V> implements AutoCloseable {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(WriteBehindCache.class);
+  private static final int DEFAULT_MAX_PENDING = 0x40000;
+
+  @NotNull
+  private final Map<K, V> storage;
+  @NotNull
+  private final Runnable commit;
+  @NotNull
+  private final ConcurrentMap<K, V> pending = new ConcurrentHashMap<>();
+  @NotNull
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  @NotNull
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  @NotNull
+  private final ExecutorService writer;
+  @NotNull
+  private final ReentrantLock lock = new ReentrantLock();
+  @NotNull
+  private final Condition written = lock.newCondition();
+  private final int maxPending;
+
+  /**
+   * Create cache.
+   *
+   * @param name    Background writer thread name.
+   * @param storage Persistent map (must be safe for reads concurrent with single writer).
+   * @param commit  Persistent map commit action.
+   */
+  public WriteBehindCache(@NotNull String name, @NotNull Map<K, V> storage, @NotNull Runnable commit) {
+    this(name, storage, commit, DEFAULT_MAX_PENDING);
+  }
+
+  /**
+   * Create cache.
+   *
+   * @param name       Background writer thread name.
+   * @param storage    Persistent map (must be safe for reads concurrent with single writer).
+   * @param commit     Persistent map commit action.
+   * @param maxPending Pending value count limit.
+   */
+  public WriteBehindCache(@NotNull String name, @NotNull Map<K, V> storage, @NotNull Runnable commit, int maxPending) {
+    this.storage = storage;
+    this.commit = commit;
+    this.maxPending = Math.max(1, maxPending);
+    this.writer = Executors.newSingleThreadExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Nullable
+  public V get(@NotNull K key) {
+    final V value = pending.get(key);
+    return value != null ? value : storage.get(key);
+  }
+
+  /**
+   * Put value to cache and schedule its write to persistent map.
+   * <p>
+   * Waits for background writer if pending value count reaches limit.
+   */
+  public void put(@NotNull K key, @NotNull V value) {
+    pending.put(key, value);
+    if (scheduled.compareAndSet(false, true)) {
+      try {
+        writer.execute(this::drain);
+      } catch (RuntimeException e) {
+        // Writer is stopped: values are written by flush.
+        scheduled.set(false);
+        return;
+      }
+    }
+    if (pending.size() >= maxPending) {
+      awaitWriter();
+    }
+  }
+
+  private void awaitWriter() {
+    lock.lock();
+    try {
+      // Failed or stopped writer doesn't drain pending values: they are written or reported by flush.
+      while (pending.size() >= maxPending && failure.get() == null && !writer.isShutdown()) {
+        written.await();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Pending value count.
+   */
+  public int getPending() {
+    return pending.size();
+  }
+
+  /**
+   * Write all pending values to persistent map and commit it.
+   */
+  public void flush() throws IOException {
+    write();
+    final Throwable error = failure.get();
+    if (error != null) {
+      throw new IOException("Can't write cache", error);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.shutdown();
+    // Wake up writer threads waiting for stopped background writer.
+    signalWritten();
+    try {
+      writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  private void drain() {
+    scheduled.set(false);
+    try {
+      write();
+    } catch (Throwable e) {
+      log.error("Can't write cache", e);
+      failure.compareAndSet(null, e);
+    } finally {
+      signalWritten();
+    }
+  }
+
+  private void signalWritten() {
+    lock.lock();
+    try {
+      written.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private synchronized void write() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    final List<Map.Entry<K, V>> batch = new ArrayList<>(pending.entrySet());
+    for (Map.Entry<K, V> entry : batch) {
+      storage.put(entry.getKey(), entry.getValue());
+    }
+    commit.run();
+    // Value can be replaced during write: keep it pending in this case.
+    for (Map.Entry<K, V> entry : batch) {
+      pending.remove(entry.getKey(), entry.getValue());
+    }
+  }
+}
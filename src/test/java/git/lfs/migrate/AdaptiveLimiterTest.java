@@ -0,0 +1,72 @@
+package git.lfs.migrate;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for AdaptiveLimiter.
+ */
+public class AdaptiveLimiterTest {
+  private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+  @Test
+  public void increaseTest() throws InterruptedException {
+    final AdaptiveLimiter limiter = new AdaptiveLimiter(1, 4);
+    Assert.assertEquals(limiter.getLimit(), 1);
+    for (int i = 0; i < 10; ++i) {
+      fill(limiter);
+      limiter.onResponse(200, LATENCY, true);
+    }
+    Assert.assertEquals(limiter.getLimit(), 4);
+    Assert.assertEquals(limiter.getInFlight(), 4);
+  }
+
+  private static void fill(AdaptiveLimiter limiter) throws InterruptedException {
+    while (limiter.getInFlight() < limiter.getLimit()) {
+      limiter.acquire();
+    }
+  }
+
+  @Test
+  public void unusedLimitTest() {
+    final AdaptiveLimiter limiter = new AdaptiveLimiter(2, 8);
+    for (int i = 0; i < 10; ++i) {
+      limiter.onResponse(200, LATENCY, true);
+    }
+    Assert.assertEquals(limiter.getLimit(), 2);
+  }
+
+  @Test
+  public void throttleTest() throws InterruptedException {
+    final AdaptiveLimiter limiter = new AdaptiveLimiter(1, 16);
+    for (int i = 0; i < 16; ++i) {
+      fill(limiter);
+      limiter.onResponse(200, LATENCY, true);
+    }
+    Assert.assertEquals(limiter.getLimit(), 16);
+    limiter.onResponse(429, LATENCY, true);
+    Assert.assertEquals(limiter.getLimit(), 8);
+    // Burst of failures is handled once.
+    limiter.onResponse(503, LATENCY, true);
+    Assert.assertEquals(limiter.getLimit(), 8);
+  }
+
+  @Test
+  public void latencyTest() throws InterruptedException {
+    final AdaptiveLimiter limiter = new AdaptiveLimiter(1, 10);
+    for (int i = 0; i < 10; ++i) {
+      fill(limiter);
+      limiter.onResponse(200, LATENCY, true);
+    }
+    Assert.assertEquals(limiter.getLimit(), 10);
+    // Latency of large uploads is ignored.
+    limiter.onResponse(200, LATENCY * 100, false);
+    Assert.assertEquals(limiter.getLimit(), 10);
+    for (int i = 0; i < 10; ++i) {
+      limiter.onResponse(200, LATENCY * 10, true);
+    }
+    Assert.assertEquals(limiter.getLimit(), 9);
+  }
+}
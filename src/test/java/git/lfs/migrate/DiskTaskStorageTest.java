@@ -0,0 +1,65 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Tests for disk spilled discovery structures.
+ */
+public class DiskTaskStorageTest {
+  private static TaskKey createKey(int index) {
+    final ObjectId id = ObjectId.fromString(String.format("%040x", index * 7919L));
+    switch (index % 3) {
+      case 0:
+        return new TaskKey(GitConverter.TaskType.Simple, index, id);
+      case 1:
+        return new TaskKey(GitConverter.TaskType.UploadLfs, PathTrie.NONE, id);
+      default:
+        return new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, id);
+    }
+  }
+
+  @Test
+  public void queueOrderTest() throws IOException {
+    final Path tempDir = Files.createTempDirectory("git-lfs-migrate");
+    try (DiskTaskQueue queue = new DiskTaskQueue(tempDir, "queue", 3)) {
+      int head = 0;
+      for (int i = 0; i < 100; ++i) {
+        queue.add(createKey(i));
+        if (i % 4 == 0) {
+          Assert.assertEquals(queue.poll(), createKey(head++));
+        }
+      }
+      Assert.assertEquals(queue.size(), 100 - head);
+      while (!queue.isEmpty()) {
+        Assert.assertEquals(queue.poll(), createKey(head++));
+      }
+      Assert.assertEquals(head, 100);
+      Assert.assertNull(queue.poll());
+    } finally {
+      Main.removeDirectory(tempDir);
+    }
+  }
+
+  @Test
+  public void setTest() throws IOException {
+    final Path tempDir = Files.createTempDirectory("git-lfs-migrate");
+    try (DiskTaskSet set = new DiskTaskSet(tempDir, 1024)) {
+      for (int i = 0; i < 50000; ++i) {
+        Assert.assertTrue(set.add(createKey(i)));
+        Assert.assertFalse(set.add(createKey(i / 2)));
+      }
+      Assert.assertEquals(set.size(), 50000);
+      Assert.assertTrue(set.contains(createKey(49999)));
+      Assert.assertFalse(set.contains(createKey(50000)));
+      Assert.assertFalse(set.contains(new TaskKey(GitConverter.TaskType.Simple, 1, createKey(0).getObjectId())));
+    } finally {
+      Main.removeDirectory(tempDir);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package git.lfs.migrate;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.eclipse.jgit.errors.InvalidPatternException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.*;
+import org.jetbrains.annotations.NotNull;
+import org.mapdb.DBMaker;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests for fast-import stream writer.
+ */
+public class FastImportWriterTest {
+  private static final int LARGE_BLOB_SIZE = 2 * 1024 * 1024;
+
+  @Test
+  public void streamTest() throws IOException {
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    try (FastImportWriter writer = new FastImportWriter(stream)) {
+      final ObjectId a = writer.insert(Constants.OBJ_BLOB, "a\n".getBytes(StandardCharsets.UTF_8));
+      final ObjectId b = writer.insert(Constants.OBJ_BLOB, "b\n".getBytes(StandardCharsets.UTF_8));
+      // Duplicate blob is written once.
+      Assert.assertEquals(writer.insert(Constants.OBJ_BLOB, "a\n".getBytes(StandardCharsets.UTF_8)), a);
+
+      final TreeFormatter dir = new TreeFormatter();
+      dir.append("file", FileMode.REGULAR_FILE, b);
+      final TreeFormatter root1 = new TreeFormatter();
+      root1.append("dir", FileMode.TREE, writer.insert(dir));
+      root1.append("keep", FileMode.REGULAR_FILE, a);
+      final ObjectId commit1 = writer.insert(commit(writer.insert(root1), "First"));
+
+      // Directory is replaced by file.
+      final TreeFormatter root2 = new TreeFormatter();
+      root2.append("\"new", FileMode.REGULAR_FILE, b);
+      root2.append("dir", FileMode.EXECUTABLE_FILE, a);
+      root2.append("keep", FileMode.REGULAR_FILE, a);
+      final ObjectId commit2 = writer.insert(commit(writer.insert(root2), "Second", commit1));
+
+      final TagBuilder tag = new TagBuilder();
+      tag.setObjectId(commit2, Constants.OBJ_COMMIT);
+      tag.setTag("v1");
+      tag.setMessage("Tag\n");
+      final ObjectId tagId = writer.insert(tag);
+
+      final Ref head = new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, "refs/heads/master", commit2);
+      final Ref tagRef = new ObjectIdRef.PeeledTag(Ref.Storage.LOOSE, "refs/tags/v1", tagId, commit2);
+      final Map<String, Ref> refs = new TreeMap<>();
+      refs.put(head.getName(), head);
+      refs.put(tagRef.getName(), tagRef);
+      final Map<TaskKey, ObjectId> converted = new HashMap<>();
+      converted.put(new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, commit2), commit2);
+      converted.put(new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, tagId), tagId);
+      writer.finish(refs, converted);
+    }
+    Assert.assertEquals(new String(stream.toByteArray(), StandardCharsets.UTF_8), "feature done\n"
+        + "blob\ndata 2\na\n\n"
+        + "blob\ndata 2\nb\n\n"
+        + "reset refs/git-lfs-migrate/import\n"
+        + "commit refs/git-lfs-migrate/import\nmark :1\n"
+        + "author Test <test@example.com> 0 +0000\ncommitter Test <test@example.com> 0 +0000\n"
+        + "data 6\nFirst\n\n"
+        + "M 100644 " + blob("b\n") + " dir/file\n"
+        + "M 100644 " + blob("a\n") + " keep\n\n"
+        + "commit refs/git-lfs-migrate/import\nmark :2\n"
+        + "author Test <test@example.com> 0 +0000\ncommitter Test <test@example.com> 0 +0000\n"
+        + "data 7\nSecond\n\n"
+        + "from :1\n"
+        + "D dir\n"
+        + "M 100644 " + blob("b\n") + " \"\\\"new\"\n"
+        + "M 100755 " + blob("a\n") + " dir\n\n"
+        + "tag v1\nfrom :2\ndata 4\nTag\n\n"
+        + "reset refs/heads/master\nfrom :2\n\n"
+        + "reset refs/git-lfs-migrate/import\nfrom 0000000000000000000000000000000000000000\n\n"
+        + "done\n");
+  }
+
+  @Test
+  public void retainTest() throws IOException {
+    try (FastImportWriter writer = new FastImportWriter(new ByteArrayOutputStream())) {
+      final TreeFormatter tree = new TreeFormatter();
+      tree.append("file", FileMode.REGULAR_FILE, writer.insert(Constants.OBJ_BLOB, new byte[0]));
+      final ObjectId commit1 = writer.insert(commit(writer.insert(tree), "First"));
+      final ObjectId commit2 = writer.insert(commit(writer.insert(new TreeFormatter()), "Second"));
+      writer.retain(Collections.singletonList(commit2));
+      writer.insert(commit(writer.insert(tree), "Third", commit2));
+      try {
+        writer.insert(commit(writer.insert(tree), "Fourth", commit1));
+        Assert.fail("Tree of released commit is still available");
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  @Test
+  public void readerTest() throws IOException {
+    try (FastImportWriter writer = new FastImportWriter(new ByteArrayOutputStream());
+         ObjectReader reader = writer.newReader()) {
+      final byte[] content = new byte[LARGE_BLOB_SIZE];
+      final ObjectId blob = writer.insert(Constants.OBJ_BLOB, content.length, new ByteArrayInputStream(content));
+      final TreeFormatter tree = new TreeFormatter();
+      tree.append("file", FileMode.REGULAR_FILE, blob);
+      final ObjectId treeId = writer.insert(tree);
+      Assert.assertTrue(reader.has(blob));
+      Assert.assertTrue(reader.has(treeId));
+      Assert.assertFalse(reader.has(ObjectId.zeroId()));
+      Assert.assertEquals(reader.open(treeId).getBytes(), tree.toByteArray());
+      Assert.assertEquals(reader.resolve(AbbreviatedObjectId.fromObjectId(blob)), Collections.singleton(blob));
+    }
+  }
+
+  @Test
+  public void largeBlobTest() throws IOException, InvalidPatternException {
+    final FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    final Repository srcRepo = new InMemoryRepository(new DfsRepositoryDescription("src"));
+    final ObjectId head;
+    try (ObjectInserter inserter = srcRepo.newObjectInserter()) {
+      final ObjectId large = inserter.insert(Constants.OBJ_BLOB, new byte[LARGE_BLOB_SIZE]);
+      ObjectId parent = null;
+      for (int i = 0; i < 3; ++i) {
+        final TreeFormatter data = new TreeFormatter();
+        data.append("large.dat", FileMode.REGULAR_FILE, large);
+        data.append("version", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, new byte[]{(byte) i}));
+        final TreeFormatter root = new TreeFormatter();
+        root.append("data", FileMode.TREE, inserter.insert(data));
+        parent = inserter.insert(parent == null ? commit(inserter.insert(root), "Commit") : commit(inserter.insert(root), "Commit", parent));
+      }
+      head = parent;
+      inserter.flush();
+    }
+    final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    final GitConverter converter = new GitConverter(DBMaker.memoryDB().make(), fs.getPath("/tmp/migrate"), new String[]{"assets/*.bin"});
+    try (FastImportWriter writer = new FastImportWriter(stream)) {
+      final Ref ref = new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, "refs/heads/master", head);
+      new StreamingConverter(converter, srcRepo, new InMemoryRepository(new DfsRepositoryDescription("dst")), new HashMap<>(), null).convert(Collections.singletonList(ref), writer);
+    }
+    // Large blob of passthrough trees is written once.
+    final String output = new String(stream.toByteArray(), StandardCharsets.ISO_8859_1);
+    final String header = "blob\ndata " + LARGE_BLOB_SIZE + "\n";
+    Assert.assertEquals(output.indexOf(header), output.lastIndexOf(header));
+    Assert.assertTrue(output.contains(header));
+  }
+
+  @Test
+  public void quoteTest() {
+    Assert.assertEquals(FastImportWriter.quote("a b/c"), "a b/c");
+    Assert.assertEquals(FastImportWriter.quote("new\nline"), "\"new\\nline\"");
+    Assert.assertEquals(FastImportWriter.quote("\"a\\b"), "\"\\\"a\\\\b\"");
+  }
+
+  @NotNull
+  private static CommitBuilder commit(@NotNull ObjectId tree, @NotNull String message, @NotNull ObjectId... parents) {
+    final PersonIdent ident = new PersonIdent("Test", "test@example.com", 0, 0);
+    final CommitBuilder commit = new CommitBuilder();
+    commit.setTreeId(tree);
+    commit.setAuthor(ident);
+    commit.setCommitter(ident);
+    commit.setMessage(message + "\n");
+    commit.setParentIds(parents);
+    return commit;
+  }
+
+  @NotNull
+  private static String blob(@NotNull String content) {
+    try (ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+      return formatter.idFor(Constants.OBJ_BLOB, content.getBytes(StandardCharsets.UTF_8)).name();
+    }
+  }
+}
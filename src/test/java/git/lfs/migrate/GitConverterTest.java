@@ -3,14 +3,24 @@ package git.lfs.migrate;
 import com.google.common.jimfs.Configuration;
 import com.google.common.jimfs.Jimfs;
 import org.eclipse.jgit.errors.InvalidPatternException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Full LFS convert.
@@ -57,4 +67,162 @@ public class GitConverterTest {
     });
     Assert.assertEquals(converter.matchFilename(path), expected);
   }
+
+  @DataProvider
+  public Object[][] matchDirectoryProvider() {
+    return new Object[][]{
+        new Object[]{"/assets", true},
+        new Object[]{"/assets/foo/bar", true},
+        new Object[]{"/foo", false},
+        new Object[]{"/foo/assets", false},
+        new Object[]{"/some", true},
+        new Object[]{"/some/other", false},
+        new Object[]{"/root/data", false},
+    };
+  }
+
+  @Test(dataProvider = "matchDirectoryProvider")
+  public void matchDirectoryTest(@NotNull String path, boolean expected) throws IOException, InvalidPatternException {
+    FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    GitConverter converter = new GitConverter(DBMaker.memoryDB().make(), fs.getPath("/tmp/migrate"), new String[]{
+        "assets/**/*.png",
+        "/root",
+        "some/data",
+    });
+    Assert.assertEquals(converter.matchDirectory(path), expected);
+  }
+
+  @Test
+  public void passthroughTreeTest() throws IOException, InvalidPatternException {
+    final FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    final Repository srcRepo = new InMemoryRepository(new DfsRepositoryDescription("src"));
+    final Repository dstRepo = new InMemoryRepository(new DfsRepositoryDescription("dst"));
+    final ObjectId blobId;
+    final ObjectId otherId;
+    final ObjectId treeId;
+    try (ObjectInserter inserter = srcRepo.newObjectInserter()) {
+      blobId = inserter.insert(Constants.OBJ_BLOB, "Image".getBytes(StandardCharsets.UTF_8));
+      final TreeFormatter nested = new TreeFormatter();
+      nested.append("image.png", FileMode.REGULAR_FILE, blobId);
+      final TreeFormatter other = new TreeFormatter();
+      other.append("nested", FileMode.TREE, inserter.insert(nested));
+      otherId = inserter.insert(other);
+      final TreeFormatter tree = new TreeFormatter();
+      tree.append("other", FileMode.TREE, otherId);
+      treeId = inserter.insert(tree);
+      inserter.flush();
+    }
+    final GitConverter converter = new GitConverter(DBMaker.memoryDB().make(), fs.getPath("/tmp/migrate"), new String[]{"assets/*.png"});
+    final ObjectId converted = convertTree(converter, srcRepo, dstRepo, new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, treeId), true);
+    Assert.assertNotEquals(converted, treeId);
+    // Subtree without matching files is copied without walk.
+    final TaskKey otherKey = new TaskKey(GitConverter.TaskType.Simple, converter.getPaths().child(PathTrie.ROOT, "other"), otherId);
+    Assert.assertEquals(convertTree(converter, srcRepo, dstRepo, otherKey, false), otherId);
+    Assert.assertTrue(dstRepo.hasObject(blobId));
+  }
+
+  @Test
+  public void passthroughNonCanonicalTreeTest() throws IOException, InvalidPatternException {
+    final FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    final Repository srcRepo = new InMemoryRepository(new DfsRepositoryDescription("src"));
+    final ObjectId legacyId;
+    final ObjectId sharedId;
+    try (ObjectInserter inserter = srcRepo.newObjectInserter()) {
+      final ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, "Image".getBytes(StandardCharsets.UTF_8));
+      // Group writable file mode is written by old git versions.
+      final ByteArrayOutputStream tree = new ByteArrayOutputStream();
+      tree.write("100664 image.png\0".getBytes(StandardCharsets.UTF_8));
+      blobId.copyRawTo(tree);
+      legacyId = inserter.insert(Constants.OBJ_TREE, tree.toByteArray());
+      final TreeFormatter shared = new TreeFormatter();
+      shared.append("first", FileMode.TREE, legacyId);
+      shared.append("second", FileMode.TREE, legacyId);
+      sharedId = inserter.insert(shared);
+      inserter.flush();
+    }
+    final GitConverter converter = new GitConverter(DBMaker.memoryDB().make(), fs.getPath("/tmp/migrate"), new String[]{"assets/*.png"});
+    final TaskKey passthroughKey = new TaskKey(GitConverter.TaskType.Simple, converter.getPaths().child(PathTrie.ROOT, "legacy"), legacyId);
+    final ObjectId passthrough = convertTree(converter, srcRepo, new InMemoryRepository(new DfsRepositoryDescription("dst")), passthroughKey, false);
+    // Tree is converted in the same way as tree with possible matching files.
+    final GitConverter walker = new GitConverter(DBMaker.memoryDB().make(), fs.getPath("/tmp/migrate"), new String[]{"legacy/*.bin"});
+    final TaskKey walkKey = new TaskKey(GitConverter.TaskType.Simple, walker.getPaths().child(PathTrie.ROOT, "legacy"), legacyId);
+    final ObjectId converted = convertTree(walker, srcRepo, new InMemoryRepository(new DfsRepositoryDescription("dst")), walkKey, true);
+    Assert.assertNotEquals(converted, legacyId);
+    Assert.assertEquals(passthrough, converted);
+    // Rewritten subtree is written once for all its parents.
+    final TaskKey sharedKey = new TaskKey(GitConverter.TaskType.Simple, converter.getPaths().child(PathTrie.ROOT, "shared"), sharedId);
+    final AtomicInteger trees = new AtomicInteger();
+    final Repository dstRepo = new InMemoryRepository(new DfsRepositoryDescription("dst"));
+    try (ObjectReader reader = srcRepo.newObjectReader();
+         ObjectInserter inserter = dstRepo.newObjectInserter()) {
+      converter.convertTask(reader, sharedKey).convert(dstRepo, new ObjectInserter.Filter() {
+        @Override
+        protected ObjectInserter delegate() {
+          return inserter;
+        }
+
+        @Override
+        public ObjectId insert(int type, byte[] data, int off, int len) throws IOException {
+          if (type == Constants.OBJ_TREE) {
+            trees.incrementAndGet();
+          }
+          return super.insert(type, data, off, len);
+        }
+      }, key -> null, null);
+    }
+    Assert.assertEquals(trees.get(), 2);
+  }
+
+  @Test
+  public void resultCacheTest() throws IOException, InvalidPatternException {
+    final FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    final DB cache = DBMaker.memoryDB().make();
+    final Repository srcRepo = new InMemoryRepository(new DfsRepositoryDescription("src"));
+    final Repository dstRepo = new InMemoryRepository(new DfsRepositoryDescription("dst"));
+    final ObjectId treeId;
+    try (ObjectInserter inserter = srcRepo.newObjectInserter()) {
+      final TreeFormatter tree = new TreeFormatter();
+      tree.append("README.md", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, "Hello".getBytes(StandardCharsets.UTF_8)));
+      treeId = inserter.insert(tree);
+      inserter.flush();
+    }
+    final TaskKey key = new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, treeId);
+    final ObjectId converted = convertTree(createConverter(fs, cache, null), srcRepo, dstRepo, key, true);
+    // Results of not completed run are not reused.
+    GitConverter converter = createConverter(fs, cache, dstRepo);
+    Assert.assertEquals(convertTree(converter, srcRepo, dstRepo, key, true), converted);
+    converter.completeResults();
+    Assert.assertEquals(convertTree(createConverter(fs, cache, dstRepo), srcRepo, dstRepo, key, false), converted);
+    // Result is not reused if destination doesn't contain it (for example, after prune).
+    final Repository prunedRepo = new InMemoryRepository(new DfsRepositoryDescription("pruned"));
+    Assert.assertEquals(convertTree(createConverter(fs, cache, prunedRepo), srcRepo, prunedRepo, key, true), converted);
+    Assert.assertTrue(prunedRepo.hasObject(converted));
+    // Other glob set.
+    converter = new GitConverter(cache, fs.getPath("/tmp/migrate"), new String[]{"*.bin"});
+    converter.openResults("local", dstRepo.getObjectDatabase());
+    Assert.assertNotEquals(convertTree(converter, srcRepo, dstRepo, key, true), converted);
+  }
+
+  @NotNull
+  private static GitConverter createConverter(@NotNull FileSystem fs, @NotNull DB cache, @Nullable Repository reuse) throws IOException, InvalidPatternException {
+    final GitConverter converter = new GitConverter(cache, fs.getPath("/tmp/migrate"), new String[]{"*.md", "*.zip"});
+    converter.openResults("local", reuse == null ? null : reuse.getObjectDatabase());
+    return converter;
+  }
+
+  @NotNull
+  private static ObjectId convertTree(@NotNull GitConverter converter, @NotNull Repository srcRepo, @NotNull Repository dstRepo, @NotNull TaskKey key, boolean expectWalk) throws IOException {
+    final Map<TaskKey, ObjectId> converted = new HashMap<>();
+    try (ObjectReader reader = srcRepo.newObjectReader();
+         ObjectInserter inserter = dstRepo.newObjectInserter()) {
+      final GitConverter.ConvertTask task = converter.convertTask(reader, key);
+      Assert.assertEquals(task.depends().iterator().hasNext(), expectWalk);
+      for (TaskKey depend : task.depends()) {
+        converted.put(depend, converter.convertTask(reader, depend).convert(dstRepo, inserter, converted::get, null));
+      }
+      final ObjectId result = task.convert(dstRepo, inserter, converted::get, null);
+      inserter.flush();
+      return result;
+    }
+  }
 }
@@ -0,0 +1,122 @@
+package git.lfs.migrate;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.eclipse.jgit.errors.InvalidPatternException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.mapdb.DBMaker;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Post-migration verification.
+ */
+public class GitVerifierTest {
+  private static final String ATTRIBUTES = "*.txt text\n";
+
+  @Test
+  public void verifyTest() throws IOException, InvalidPatternException, InterruptedException {
+    final FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    final Repository srcRepo = new InMemoryRepository(new DfsRepositoryDescription("src"));
+    final ObjectId head = createHistory(srcRepo, "Readme", ATTRIBUTES);
+    Assert.assertEquals(verify(fs, srcRepo, head, convert(fs, srcRepo, head)), 0);
+  }
+
+  @Test
+  public void blobChangedTest() throws IOException, InvalidPatternException, InterruptedException {
+    final FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    final Repository srcRepo = new InMemoryRepository(new DfsRepositoryDescription("src"));
+    final ObjectId head = createHistory(srcRepo, "Readme", ATTRIBUTES);
+    // Same history with other non-LFS file content in last commit.
+    final Repository otherRepo = new InMemoryRepository(new DfsRepositoryDescription("other"));
+    final ObjectId other = createHistory(otherRepo, "Changed", ATTRIBUTES);
+    Assert.assertEquals(verify(fs, srcRepo, head, convert(fs, otherRepo, other)), 1);
+  }
+
+  @Test
+  public void attributesChangedTest() throws IOException, InvalidPatternException, InterruptedException {
+    final FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    final Repository srcRepo = new InMemoryRepository(new DfsRepositoryDescription("src"));
+    final ObjectId head = createHistory(srcRepo, "Readme", ATTRIBUTES);
+    // Converted attributes contain LFS rules, but original lines are lost.
+    final Repository otherRepo = new InMemoryRepository(new DfsRepositoryDescription("other"));
+    final ObjectId other = createHistory(otherRepo, "Readme", null);
+    Assert.assertEquals(verify(fs, srcRepo, head, convert(fs, otherRepo, other)), 1);
+  }
+
+  @NotNull
+  private static Repository convert(@NotNull FileSystem fs, @NotNull Repository srcRepo, @NotNull ObjectId head) throws IOException, InvalidPatternException {
+    final Repository dstRepo = new InMemoryRepository(new DfsRepositoryDescription("dst"));
+    final Map<TaskKey, ObjectId> converted = new HashMap<>();
+    new StreamingConverter(createConverter(fs), srcRepo, dstRepo, converted, null).convert(Collections.singletonList(createRef(head)));
+    final RefUpdate refUpdate = dstRepo.updateRef("refs/heads/master");
+    refUpdate.setNewObjectId(converted.get(new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, head)));
+    refUpdate.forceUpdate();
+    return dstRepo;
+  }
+
+  private static long verify(@NotNull FileSystem fs, @NotNull Repository srcRepo, @NotNull ObjectId head, @NotNull Repository dstRepo) throws IOException, InvalidPatternException, InterruptedException {
+    final Path basePath = fs.getPath("/tmp/migrate");
+    try (GitVerifier verifier = new GitVerifier(createConverter(fs), srcRepo, dstRepo, basePath, 2)) {
+      return verifier.verify(Collections.singletonMap("refs/heads/master", createRef(head)), dstRepo.getRefDatabase().getRefs(RefDatabase.ALL));
+    }
+  }
+
+  @NotNull
+  private static GitConverter createConverter(@NotNull FileSystem fs) throws IOException, InvalidPatternException {
+    return new GitConverter(DBMaker.memoryDB().make(), fs.getPath("/tmp/migrate"), new String[]{"*.bin"});
+  }
+
+  @NotNull
+  private static Ref createRef(@NotNull ObjectId id) {
+    return new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, "refs/heads/master", id);
+  }
+
+  /**
+   * Create two commits history: only last commit depends on parameters.
+   */
+  @NotNull
+  private static ObjectId createHistory(@NotNull Repository repository, @NotNull String readme, @Nullable String attributes) throws IOException {
+    try (ObjectInserter inserter = repository.newObjectInserter()) {
+      final ObjectId root = commit(inserter, tree(inserter, "Root", "Readme", ATTRIBUTES));
+      final ObjectId head = commit(inserter, tree(inserter, "Head", readme, attributes), root);
+      inserter.flush();
+      return head;
+    }
+  }
+
+  @NotNull
+  private static ObjectId tree(@NotNull ObjectInserter inserter, @NotNull String data, @NotNull String readme, @Nullable String attributes) throws IOException {
+    final TreeFormatter tree = new TreeFormatter();
+    if (attributes != null) {
+      tree.append(GitConverter.GIT_ATTRIBUTES, FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, attributes.getBytes(StandardCharsets.UTF_8)));
+    }
+    tree.append("README.md", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, readme.getBytes(StandardCharsets.UTF_8)));
+    tree.append("data.bin", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, data.getBytes(StandardCharsets.UTF_8)));
+    return inserter.insert(tree);
+  }
+
+  @NotNull
+  private static ObjectId commit(@NotNull ObjectInserter inserter, @NotNull ObjectId tree, @NotNull ObjectId... parents) throws IOException {
+    final PersonIdent ident = new PersonIdent("Test", "test@example.com", 0, 0);
+    final CommitBuilder commit = new CommitBuilder();
+    commit.setTreeId(tree);
+    commit.setParentIds(parents);
+    commit.setAuthor(ident);
+    commit.setCommitter(ident);
+    commit.setMessage("Test\n");
+    return inserter.insert(commit);
+  }
+}
@@ -0,0 +1,138 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jetbrains.annotations.NotNull;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Tests for history limit.
+ */
+public class HistoryLimitTest {
+  /**
+   * History: A - B - C - D (master), B - E (side), A (tag).
+   */
+  @Test
+  public void depthTest() throws IOException {
+    final Repository repo = new InMemoryRepository(new DfsRepositoryDescription("test"));
+    final ObjectId a = commit(repo, 1000);
+    final ObjectId b = commit(repo, 2000, a);
+    final ObjectId c = commit(repo, 3000, b);
+    final ObjectId d = commit(repo, 4000, c);
+    final ObjectId e = commit(repo, 5000, b);
+    final Map<String, Ref> refs = createRefs(d, e, a);
+
+    final HistoryLimit limit = new HistoryLimit(repo, refs.values(), 2, 0);
+    // Tag is a ref itself, so A is included.
+    Assert.assertEquals(included(limit, a, b, c, d, e), Arrays.asList(a, b, c, d, e));
+
+    final HistoryLimit branches = new HistoryLimit(repo, Arrays.asList(refs.get("refs/heads/master"), refs.get("refs/heads/side")), 2, 0);
+    Assert.assertEquals(included(branches, a, b, c, d, e), Arrays.asList(b, c, d, e));
+    // B is reachable from side in one step.
+    Assert.assertEquals(parents(repo, branches, c), Collections.singletonList(b));
+    Assert.assertEquals(parents(repo, branches, b), Collections.emptyList());
+    Assert.assertEquals(branches.filter(repo, refs).keySet(), new HashSet<>(Arrays.asList("refs/heads/master", "refs/heads/side")));
+  }
+
+  @Test
+  public void sinceTest() throws IOException {
+    final Repository repo = new InMemoryRepository(new DfsRepositoryDescription("test"));
+    final ObjectId a = commit(repo, 1000);
+    final ObjectId b = commit(repo, 2000, a);
+    final ObjectId c = commit(repo, 3000, b);
+    final ObjectId d = commit(repo, 4000, c);
+    final ObjectId e = commit(repo, 5000, b);
+    final HistoryLimit limit = new HistoryLimit(repo, createRefs(d, e, a).values(), 0, 3000);
+    Assert.assertEquals(included(limit, a, b, c, d, e), Arrays.asList(c, d, e));
+    Assert.assertEquals(parents(repo, limit, c), Collections.emptyList());
+    Assert.assertEquals(parents(repo, limit, e), Collections.emptyList());
+    Assert.assertEquals(parents(repo, limit, d), Collections.singletonList(c));
+    Assert.assertNull(limit.getDroppedParents(d));
+  }
+
+  @Test
+  public void fingerprintTest() throws Exception {
+    final Repository repo = new InMemoryRepository(new DfsRepositoryDescription("test"));
+    final ObjectId a = commit(repo, 1000);
+    final ObjectId b = commit(repo, 2000, a);
+    final ObjectId c = commit(repo, 3000, b);
+    final ObjectId d = commit(repo, 4000, c);
+    final ObjectId e = commit(repo, 5000, b);
+    final List<Ref> refs = new ArrayList<>(createRefs(d, e, c).values());
+    final String depth2 = fingerprint(new HistoryLimit(repo, refs, 2, 0));
+    Assert.assertEquals(fingerprint(new HistoryLimit(repo, refs, 2, 0)), depth2);
+    Assert.assertNotEquals(fingerprint(new HistoryLimit(repo, refs, 3, 0)), depth2);
+    Assert.assertNotEquals(fingerprint(new HistoryLimit(repo, refs, 0, 3000)), depth2);
+    // Same limit on other refs has other boundary.
+    Assert.assertNotEquals(fingerprint(new HistoryLimit(repo, refs.subList(0, 1), 2, 0)), depth2);
+  }
+
+  @Test
+  public void parseDateTest() {
+    Assert.assertEquals(Main.parseDate("1970-01-02"), 86400);
+    Assert.assertEquals(Main.parseDate("1970-01-02T01:00:00+01:00"), 86400);
+  }
+
+  @NotNull
+  private static String fingerprint(@NotNull HistoryLimit limit) throws NoSuchAlgorithmException {
+    final MessageDigest md = MessageDigest.getInstance("SHA-256");
+    limit.fingerprint(md);
+    return ObjectId.fromRaw(md.digest()).name();
+  }
+
+  @NotNull
+  private static List<ObjectId> included(@NotNull HistoryLimit limit, @NotNull ObjectId... commits) {
+    final List<ObjectId> result = new ArrayList<>();
+    for (ObjectId commit : commits) {
+      if (limit.isIncluded(commit)) {
+        result.add(commit);
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private static List<ObjectId> parents(@NotNull Repository repo, @NotNull HistoryLimit limit, @NotNull ObjectId id) throws IOException {
+    try (RevWalk revWalk = new RevWalk(repo)) {
+      final List<ObjectId> result = new ArrayList<>();
+      for (RevCommit parent : limit.getParents(revWalk.parseCommit(id))) {
+        result.add(parent.copy());
+      }
+      return result;
+    }
+  }
+
+  @NotNull
+  private static Map<String, Ref> createRefs(@NotNull ObjectId master, @NotNull ObjectId side, @NotNull ObjectId tag) {
+    final Map<String, Ref> refs = new TreeMap<>();
+    refs.put("refs/heads/master", new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, "refs/heads/master", master));
+    refs.put("refs/heads/side", new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, "refs/heads/side", side));
+    refs.put("refs/tags/old", new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, "refs/tags/old", tag));
+    return refs;
+  }
+
+  @NotNull
+  private static ObjectId commit(@NotNull Repository repo, long time, @NotNull ObjectId... parents) throws IOException {
+    try (ObjectInserter inserter = repo.newObjectInserter()) {
+      final PersonIdent ident = new PersonIdent("Test", "test@example.com", time * 1000, 0);
+      final CommitBuilder commit = new CommitBuilder();
+      commit.setTreeId(inserter.insert(new TreeFormatter()));
+      commit.setAuthor(ident);
+      commit.setCommitter(ident);
+      commit.setMessage("Commit " + time + "\n");
+      commit.setParentIds(parents);
+      final ObjectId id = inserter.insert(commit);
+      inserter.flush();
+      return id;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package git.lfs.migrate;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Date;
+
+/**
+ * Tests for HTTP retry strategy.
+ */
+public class HttpTransportTest {
+  @Test
+  public void retryStatusTest() {
+    final HttpTransport.BackoffRetryStrategy strategy = new HttpTransport.BackoffRetryStrategy(2, 100);
+    Assert.assertTrue(strategy.retryRequest(createResponse(429), 1, new BasicHttpContext()));
+    Assert.assertTrue(strategy.retryRequest(createResponse(503), 2, new BasicHttpContext()));
+    Assert.assertFalse(strategy.retryRequest(createResponse(503), 3, new BasicHttpContext()));
+    Assert.assertFalse(strategy.retryRequest(createResponse(404), 1, new BasicHttpContext()));
+    Assert.assertFalse(strategy.retryRequest(createResponse(200), 1, new BasicHttpContext()));
+  }
+
+  @Test
+  public void retryStreamTest() {
+    final HttpTransport.BackoffRetryStrategy strategy = new HttpTransport.BackoffRetryStrategy(2, 100);
+    final HttpPut repeatable = new HttpPut("http://localhost/");
+    repeatable.setEntity(new ByteArrayEntity(new byte[10]));
+    Assert.assertTrue(strategy.retryRequest(createResponse(503), 1, createContext(repeatable)));
+    // Consumed stream can't be sent again.
+    final HttpPut stream = new HttpPut("http://localhost/");
+    stream.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[10]), 10));
+    Assert.assertFalse(strategy.retryRequest(createResponse(503), 1, createContext(stream)));
+  }
+
+  @Test
+  public void backoffTest() {
+    final HttpTransport.BackoffRetryStrategy strategy = new HttpTransport.BackoffRetryStrategy(10, 100);
+    for (int i = 0; i < 100; ++i) {
+      final long first = strategy.getBackoff(1);
+      Assert.assertTrue(first >= 50 && first <= 100, "Unexpected delay: " + first);
+      final long fourth = strategy.getBackoff(4);
+      Assert.assertTrue(fourth >= 400 && fourth <= 800, "Unexpected delay: " + fourth);
+    }
+  }
+
+  @Test
+  public void retryAfterTest() {
+    final HttpTransport.BackoffRetryStrategy strategy = new HttpTransport.BackoffRetryStrategy(2, 100);
+    final HttpResponse seconds = createResponse(429);
+    seconds.addHeader("Retry-After", "7");
+    Assert.assertTrue(strategy.retryRequest(seconds, 1, new BasicHttpContext()));
+    Assert.assertEquals(strategy.getRetryInterval(), 7000L);
+
+    final HttpResponse date = createResponse(503);
+    date.addHeader("Retry-After", DateUtils.formatDate(new Date(System.currentTimeMillis() + 60000)));
+    final Long delay = HttpTransport.BackoffRetryStrategy.getRetryAfter(date);
+    Assert.assertNotNull(delay);
+    Assert.assertTrue(delay > 50000 && delay <= 60000, "Unexpected delay: " + delay);
+  }
+
+  private static HttpContext createContext(HttpRequest request) {
+    final HttpContext context = new BasicHttpContext();
+    context.setAttribute(HttpCoreContext.HTTP_REQUEST, request);
+    return context;
+  }
+
+  private static HttpResponse createResponse(int status) {
+    return new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "Status " + status);
+  }
+}
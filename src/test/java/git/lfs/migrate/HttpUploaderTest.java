@@ -0,0 +1,84 @@
+package git.lfs.migrate;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import ru.bozaro.gitlfs.client.Client;
+import ru.bozaro.gitlfs.client.auth.BasicAuthProvider;
+import ru.bozaro.gitlfs.client.io.ByteArrayStreamProvider;
+import ru.bozaro.gitlfs.client.io.StreamProvider;
+import ru.bozaro.gitlfs.common.data.Meta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for upload scheduling.
+ */
+public class HttpUploaderTest {
+  @Test
+  public void largestFirstTest() throws Exception {
+    final Random random = new Random(42);
+    try (LfsTestServer server = new LfsTestServer(0);
+         HttpTransport transport = new HttpTransport(4, 8, 1000, 0, 0, 1, false)) {
+      final BasicAuthProvider auth = new BasicAuthProvider(server.getUrl());
+      final Client client = new Client(auth, transport.getHttpClient());
+      // Uploads are started on upload pool in dispatch order.
+      final MultipartUploader multipart = new MultipartUploader(auth, transport.getHttpClient(), 0, 1, 1);
+      final List<Meta> small = new ArrayList<>();
+      final Meta first;
+      final Meta second;
+      final Meta large;
+      final Meta huge;
+      server.pauseUploads();
+      final Main.HttpUploader uploader = new Main.HttpUploader(null, client, transport, multipart, 1, 1);
+      try {
+        // Started immediately: upload slots are free.
+        first = upload(uploader, createContent(random, 10));
+        second = upload(uploader, createContent(random, 20));
+        waitUploads(server, 1);
+        // Queued while all slots are busy.
+        large = upload(uploader, createContent(random, 0x180000));
+        for (int i = 0; i < 5; ++i) {
+          small.add(upload(uploader, createContent(random, 30 + i)));
+        }
+        huge = upload(uploader, createContent(random, 0x300000));
+      } finally {
+        server.resumeUploads();
+        uploader.close();
+      }
+      Assert.assertEquals(uploader.getFinished(), 9);
+
+      final List<String> order = server.getUploadOrder();
+      Assert.assertEquals(order.size(), 9);
+      Assert.assertEquals(order.subList(0, 2), Arrays.asList(first.getOid(), second.getOid()));
+      Assert.assertEquals(order.subList(2, 4), Arrays.asList(huge.getOid(), large.getOid()));
+      // Small objects are started together in single slot.
+      Collections.reverse(small);
+      Assert.assertEquals(order.subList(4, 9), small.stream().map(Meta::getOid).collect(Collectors.toList()));
+      Assert.assertEquals(server.getObject(huge.getOid()).length, 0x300000);
+    }
+  }
+
+  private static void waitUploads(LfsTestServer server, int count) throws InterruptedException {
+    for (int i = 0; i < 1000 && server.getUploadOrder().size() < count; ++i) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static Meta upload(Main.HttpUploader uploader, byte[] content) throws Exception {
+    final StreamProvider provider = new ByteArrayStreamProvider(content);
+    final Meta meta = Client.generateMeta(provider);
+    uploader.upload(meta, provider);
+    return meta;
+  }
+
+  private static byte[] createContent(Random random, int size) {
+    final byte[] content = new byte[size];
+    random.nextBytes(content);
+    return content;
+  }
+}
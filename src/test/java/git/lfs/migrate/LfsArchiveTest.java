@@ -0,0 +1,56 @@
+package git.lfs.migrate;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Tests for LFS objects archive.
+ */
+public class LfsArchiveTest {
+  @Test
+  public void roundTripTest() throws IOException {
+    final Path tempDir = Files.createTempDirectory("git-lfs-migrate");
+    try {
+      final Path archivePath = tempDir.resolve("archive");
+      final String[] contents = {"foo", "", "bar\n", "foo"};
+      final String[] hashes = new String[contents.length];
+      try (LfsArchiveWriter writer = new LfsArchiveWriter(archivePath, 1024)) {
+        for (int i = 0; i < contents.length; ++i) {
+          final byte[] data = contents[i].getBytes(StandardCharsets.UTF_8);
+          hashes[i] = writer.append(new ByteArrayInputStream(data), data.length);
+          Assert.assertTrue(writer.contains(hashes[i]));
+        }
+      }
+      Assert.assertEquals(hashes[0], "2c26b46b68ffc68ff99b453c1d30413413422d706483bfa0f98a5e886266e7ae");
+      Assert.assertEquals(hashes[3], hashes[0]);
+
+      final List<LfsArchive.Entry> entries = LfsArchive.readIndex(archivePath);
+      Assert.assertEquals(entries.size(), 3);
+      for (int i = 0; i < entries.size(); ++i) {
+        final LfsArchive.Entry entry = entries.get(i);
+        Assert.assertEquals(entry.getOid(), hashes[i]);
+        final byte[] data = new byte[(int) entry.getSize()];
+        try (InputStream stream = LfsArchive.openStream(entry)) {
+          Assert.assertEquals(stream.read(data), data.length == 0 ? -1 : data.length);
+          Assert.assertEquals(stream.read(), -1);
+        }
+        Assert.assertEquals(new String(data, StandardCharsets.UTF_8), contents[i]);
+      }
+
+      final Path basePath = tempDir.resolve("repo");
+      Assert.assertEquals(LfsArchive.extract(archivePath, basePath), 3);
+      Assert.assertEquals(LfsArchive.extract(archivePath, basePath), 0);
+      Assert.assertEquals(new String(Files.readAllBytes(GitConverter.getLfsObjectPath(basePath, hashes[2])), StandardCharsets.UTF_8), "bar\n");
+    } finally {
+      Main.removeDirectory(tempDir);
+    }
+  }
+}
@@ -0,0 +1,399 @@
+package git.lfs.migrate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process LFS batch API stand-in for tests.
+ * <p>
+ * Supports basic transfer and multipart-basic transfer (see {@link MultipartUploader}) with failure injection.
+ * Request latency, upload bandwidth, random server errors and already uploaded objects can be simulated for
+ * offline upload benchmarks (see {@link UploadBenchmark}).
+ */
+public class LfsTestServer implements AutoCloseable {
+  @NotNull
+  private final ObjectMapper mapper = new ObjectMapper();
+  @NotNull
+  private final HttpServer server;
+  @NotNull
+  private final ExecutorService pool = Executors.newCachedThreadPool();
+  @NotNull
+  private final ConcurrentMap<String, byte[]> objects = new ConcurrentHashMap<>();
+  @NotNull
+  private final ConcurrentMap<String, Upload> uploads = new ConcurrentHashMap<>();
+  @NotNull
+  private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+  @NotNull
+  private final ConcurrentMap<Long, AtomicInteger> partFailures = new ConcurrentHashMap<>();
+  @NotNull
+  private final List<String> uploadOrder = Collections.synchronizedList(new ArrayList<>());
+  @NotNull
+  private final Set<String> existing = ConcurrentHashMap.newKeySet();
+  @NotNull
+  private final LongAdder uploadedBytes = new LongAdder();
+  @NotNull
+  private final AtomicInteger errors = new AtomicInteger();
+  private final int partSize;
+  @Nullable
+  private volatile CountDownLatch uploadGate;
+  private volatile long latency;
+  private volatile long bandwidth;
+  private volatile double errorRate;
+  private volatile double existsRatio;
+
+  /**
+   * Create and start server.
+   *
+   * @param partSize Part size for multipart transfer (0 for basic transfer only).
+   */
+  public LfsTestServer(int partSize) throws IOException {
+    this.partSize = partSize;
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/lfs/", this::handle);
+    server.setExecutor(pool);
+    server.start();
+  }
+
+  @NotNull
+  public URI getUrl() {
+    return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/lfs/");
+  }
+
+  @Nullable
+  public byte[] getObject(@NotNull String oid) {
+    return objects.get(oid);
+  }
+
+  /**
+   * @param kind Request kind: objects (batch API), upload, part, commit or verify.
+   * @return Received request count.
+   */
+  public int getRequests(@NotNull String kind) {
+    final AtomicInteger counter = requests.get(kind);
+    return counter == null ? 0 : counter.get();
+  }
+
+  /**
+   * @return Object ids in order of basic transfer upload requests.
+   */
+  @NotNull
+  public List<String> getUploadOrder() {
+    synchronized (uploadOrder) {
+      return new ArrayList<>(uploadOrder);
+    }
+  }
+
+  /**
+   * Hold basic transfer uploads until {@link #resumeUploads()}.
+   */
+  public void pauseUploads() {
+    uploadGate = new CountDownLatch(1);
+  }
+
+  public void resumeUploads() {
+    final CountDownLatch gate = uploadGate;
+    uploadGate = null;
+    if (gate != null) {
+      gate.countDown();
+    }
+  }
+
+  /**
+   * @return Uploaded object content bytes (including failed and repeated uploads).
+   */
+  public long getUploadedBytes() {
+    return uploadedBytes.sum();
+  }
+
+  /**
+   * @return Injected server error count.
+   */
+  public int getErrors() {
+    return errors.get();
+  }
+
+  /**
+   * @return True if object is uploaded or reported as already existing.
+   */
+  public boolean hasObject(@NotNull String oid) {
+    return objects.containsKey(oid) || existing.contains(oid);
+  }
+
+  /**
+   * @param latency Delay before every response in milliseconds.
+   */
+  public void setLatency(long latency) {
+    this.latency = latency;
+  }
+
+  /**
+   * @param bandwidth Upload bandwidth of single request in bytes per second (0 for unlimited).
+   */
+  public void setBandwidth(long bandwidth) {
+    this.bandwidth = bandwidth;
+  }
+
+  /**
+   * @param errorRate Probability of server error (503) for batch API and upload requests.
+   */
+  public void setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * @param existsRatio Fraction of objects reported by batch API as already uploaded.
+   */
+  public void setExistsRatio(double existsRatio) {
+    this.existsRatio = existsRatio;
+  }
+
+  /**
+   * Fail next part uploads at given position with server error.
+   */
+  public void failPart(long pos, int count) {
+    partFailures.computeIfAbsent(pos, key -> new AtomicInteger()).addAndGet(count);
+  }
+
+  private void handle(@NotNull HttpExchange exchange) throws IOException {
+    try {
+      final String[] path = exchange.getRequestURI().getPath().substring("/lfs/".length()).split("/");
+      final byte[] body = readBody(exchange.getRequestBody());
+      requests.computeIfAbsent(path[0], key -> new AtomicInteger()).incrementAndGet();
+      if (!simulate(path[0], body.length)) {
+        errors.incrementAndGet();
+        send(exchange, 503, null);
+        return;
+      }
+      switch (path[0]) {
+        case "objects":
+          sendJson(exchange, batch(mapper.readTree(body)));
+          break;
+        case "upload":
+          uploadOrder.add(path[1]);
+          final CountDownLatch gate = uploadGate;
+          if (gate != null) {
+            gate.await();
+          }
+          putObject(path[1], body);
+          send(exchange, 200, null);
+          break;
+        case "part":
+          final long pos = Long.parseLong(path[2]);
+          final AtomicInteger failures = partFailures.get(pos);
+          if (failures != null && failures.getAndDecrement() > 0) {
+            send(exchange, 500, null);
+            break;
+          }
+          final Upload upload = uploads.get(path[1]);
+          if (upload == null || pos + body.length > upload.content.length) {
+            send(exchange, 400, null);
+            break;
+          }
+          System.arraycopy(body, 0, upload.content, (int) pos, body.length);
+          final String etag = "\"" + path[1].substring(0, 8) + "-" + pos + "\"";
+          upload.parts.put(pos, etag);
+          exchange.getResponseHeaders().set("ETag", etag);
+          send(exchange, 200, null);
+          break;
+        case "commit":
+          send(exchange, commit(path[1], mapper.readTree(body)) ? 200 : 422, null);
+          break;
+        case "verify":
+          send(exchange, hasObject(path[1]) ? 200 : 404, null);
+          break;
+        default:
+          send(exchange, 404, null);
+      }
+    } catch (RuntimeException e) {
+      send(exchange, 500, null);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      send(exchange, 503, null);
+    }
+  }
+
+  /**
+   * Simulate latency and bandwidth.
+   *
+   * @return False if request should fail with server error.
+   */
+  private boolean simulate(@NotNull String kind, int bodySize) throws InterruptedException {
+    final boolean upload = kind.equals("upload") || kind.equals("part");
+    if (upload) {
+      uploadedBytes.add(bodySize);
+    }
+    final long bytesPerSecond = bandwidth;
+    final long delay = latency + (upload && bytesPerSecond > 0 ? bodySize * 1000L / bytesPerSecond : 0);
+    if (delay > 0) {
+      Thread.sleep(delay);
+    }
+    final double rate = errorRate;
+    return !(rate > 0 && (upload || kind.equals("objects")) && ThreadLocalRandom.current().nextDouble() < rate);
+  }
+
+  /**
+   * Decide by object id, so object is reported as existing in every batch response.
+   */
+  private boolean isExisting(@NotNull String oid) {
+    final double ratio = existsRatio;
+    return existing.contains(oid) || (ratio > 0 && Integer.parseInt(oid.substring(0, 4), 16) < ratio * 0x10000);
+  }
+
+  @NotNull
+  private JsonNode batch(@NotNull JsonNode request) {
+    boolean useMultipart = false;
+    for (JsonNode transfer : request.path("transfers")) {
+      if (partSize > 0 && MultipartUploader.TRANSFER_MULTIPART.equals(transfer.asText())) {
+        useMultipart = true;
+      }
+    }
+    final ObjectNode response = mapper.createObjectNode();
+    response.put("transfer", useMultipart ? MultipartUploader.TRANSFER_MULTIPART : MultipartUploader.TRANSFER_BASIC);
+    final ArrayNode items = response.putArray("objects");
+    for (JsonNode object : request.path("objects")) {
+      final String oid = object.path("oid").asText();
+      final long size = object.path("size").asLong();
+      final ObjectNode item = items.addObject();
+      item.put("oid", oid);
+      item.put("size", size);
+      if (objects.containsKey(oid)) {
+        continue;
+      }
+      if (isExisting(oid)) {
+        existing.add(oid);
+        continue;
+      }
+      final ObjectNode actions = item.putObject("actions");
+      if (useMultipart) {
+        final Upload upload = uploads.computeIfAbsent(oid, key -> new Upload((int) size));
+        final ArrayNode parts = actions.putArray("parts");
+        for (long pos = 0; pos < size; pos += partSize) {
+          if (upload.parts.containsKey(pos)) continue;
+          parts.addObject()
+              .put("href", getUrl() + "part/" + oid + "/" + pos)
+              .put("pos", pos)
+              .put("size", Math.min(partSize, size - pos));
+        }
+        actions.putObject("commit").put("href", getUrl() + "commit/" + oid);
+      } else {
+        actions.putObject("upload").put("href", getUrl() + "upload/" + oid);
+      }
+      actions.putObject("verify").put("href", getUrl() + "verify/" + oid);
+    }
+    return response;
+  }
+
+  private boolean commit(@NotNull String oid, @NotNull JsonNode request) {
+    final Upload upload = uploads.get(oid);
+    if (upload == null) {
+      return objects.containsKey(oid);
+    }
+    long committed = 0;
+    for (JsonNode part : request.path("parts")) {
+      final long pos = part.path("pos").asLong();
+      if (!part.path("etag").asText().equals(upload.parts.get(pos)) || pos != committed) {
+        return false;
+      }
+      committed += part.path("size").asLong();
+    }
+    if (committed != upload.content.length || !putObject(oid, upload.content)) {
+      return false;
+    }
+    uploads.remove(oid);
+    return true;
+  }
+
+  private boolean putObject(@NotNull String oid, @NotNull byte[] content) {
+    if (!oid.equals(sha256(content))) {
+      return false;
+    }
+    objects.put(oid, content);
+    return true;
+  }
+
+  @NotNull
+  private static String sha256(@NotNull byte[] content) {
+    try {
+      final StringBuilder result = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+        result.append(String.format("%02x", b & 0xFF));
+      }
+      return result.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @NotNull
+  private static byte[] readBody(@NotNull InputStream stream) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[0x10000];
+    while (true) {
+      final int read = stream.read(buffer);
+      if (read < 0) break;
+      result.write(buffer, 0, read);
+    }
+    return result.toByteArray();
+  }
+
+  private void sendJson(@NotNull HttpExchange exchange, @NotNull JsonNode json) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", MultipartUploader.MIME_LFS_JSON);
+    send(exchange, 200, mapper.writeValueAsBytes(json));
+  }
+
+  private static void send(@NotNull HttpExchange exchange, int status, @Nullable byte[] body) throws IOException {
+    exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+    if (body != null) {
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(body);
+      }
+    }
+    exchange.close();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    pool.shutdownNow();
+  }
+
+  private static final class Upload {
+    @NotNull
+    private final byte[] content;
+    @NotNull
+    private final Map<Long, String> parts = new ConcurrentHashMap<>();
+
+    private Upload(int size) {
+      this.content = new byte[size];
+    }
+  }
+}
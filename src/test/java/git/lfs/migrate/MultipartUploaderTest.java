@@ -0,0 +1,129 @@
+package git.lfs.migrate;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import ru.bozaro.gitlfs.client.Client;
+import ru.bozaro.gitlfs.client.auth.BasicAuthProvider;
+import ru.bozaro.gitlfs.client.io.ByteArrayStreamProvider;
+import ru.bozaro.gitlfs.client.io.StreamProvider;
+import ru.bozaro.gitlfs.common.data.Meta;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for chunked LFS upload.
+ */
+public class MultipartUploaderTest {
+  private static final int PART_SIZE = 4096;
+  private static final int OBJECT_SIZE = PART_SIZE * 2 + 1000;
+
+  @Test
+  public void multipartTest() throws IOException {
+    try (LfsTestServer server = new LfsTestServer(PART_SIZE);
+         CloseableHttpClient http = HttpClients.createDefault()) {
+      final byte[] content = createContent();
+      final AtomicInteger opened = new AtomicInteger();
+      final StreamProvider provider = () -> {
+        opened.incrementAndGet();
+        return new ByteArrayInputStream(content);
+      };
+      final Meta meta = Client.generateMeta(provider);
+      opened.set(0);
+      createUploader(server, http, 1).upload(meta, provider);
+      Assert.assertEquals(server.getObject(meta.getOid()), content);
+      // Parts are read from single stream.
+      Assert.assertEquals(opened.get(), 1);
+      Assert.assertEquals(server.getRequests("part"), 3);
+      Assert.assertEquals(server.getRequests("commit"), 1);
+      Assert.assertEquals(server.getRequests("verify"), 1);
+      Assert.assertEquals(server.getRequests("upload"), 0);
+
+      // Already uploaded object.
+      upload(server, http, 1, content);
+      Assert.assertEquals(server.getRequests("objects"), 2);
+      Assert.assertEquals(server.getRequests("part"), 3);
+    }
+  }
+
+  @Test
+  public void partRetryTest() throws IOException {
+    try (LfsTestServer server = new LfsTestServer(PART_SIZE);
+         CloseableHttpClient http = HttpClients.createDefault()) {
+      server.failPart(PART_SIZE, 2);
+      final byte[] content = createContent();
+      final Meta meta = upload(server, http, 2, content);
+      Assert.assertEquals(server.getObject(meta.getOid()), content);
+      Assert.assertEquals(server.getRequests("part"), 5);
+      Assert.assertEquals(server.getRequests("objects"), 1);
+    }
+  }
+
+  @Test
+  public void transportRetryTest() throws IOException {
+    try (LfsTestServer server = new LfsTestServer(PART_SIZE);
+         CloseableHttpClient http = HttpClients.custom()
+             .setServiceUnavailableRetryStrategy(new HttpTransport.BackoffRetryStrategy(2, 1))
+             .build()) {
+      // Part entity is not repeated by HTTP client: part retry count limits all attempts.
+      server.failPart(PART_SIZE, 3);
+      final byte[] content = createContent();
+      final Meta meta = upload(server, http, 2, content);
+      Assert.assertEquals(server.getObject(meta.getOid()), content);
+      Assert.assertEquals(server.getRequests("objects"), 2);
+      Assert.assertEquals(server.getRequests("part"), 6);
+    }
+  }
+
+  @Test
+  public void resumeTest() throws IOException {
+    try (LfsTestServer server = new LfsTestServer(PART_SIZE);
+         CloseableHttpClient http = HttpClients.createDefault()) {
+      // Second part fails more times than part retry count: upload is resumed by new batch request.
+      server.failPart(PART_SIZE, 2);
+      final byte[] content = createContent();
+      final Meta meta = upload(server, http, 1, content);
+      Assert.assertEquals(server.getObject(meta.getOid()), content);
+      Assert.assertEquals(server.getRequests("objects"), 2);
+      // First part is uploaded only once.
+      Assert.assertEquals(server.getRequests("part"), 5);
+      Assert.assertEquals(server.getRequests("commit"), 1);
+    }
+  }
+
+  @Test
+  public void basicTest() throws IOException {
+    try (LfsTestServer server = new LfsTestServer(0);
+         CloseableHttpClient http = HttpClients.createDefault()) {
+      final byte[] content = createContent();
+      final Meta meta = upload(server, http, 1, content);
+      Assert.assertEquals(server.getObject(meta.getOid()), content);
+      Assert.assertEquals(server.getRequests("upload"), 1);
+      Assert.assertEquals(server.getRequests("part"), 0);
+      Assert.assertEquals(server.getRequests("verify"), 1);
+    }
+  }
+
+  private static Meta upload(LfsTestServer server, CloseableHttpClient http, int retries, byte[] content) throws IOException {
+    final StreamProvider provider = new ByteArrayStreamProvider(content);
+    final Meta meta = Client.generateMeta(provider);
+    final MultipartUploader uploader = createUploader(server, http, retries);
+    Assert.assertTrue(uploader.accept(meta));
+    uploader.upload(meta, provider);
+    return meta;
+  }
+
+  private static MultipartUploader createUploader(LfsTestServer server, CloseableHttpClient http, int retries) {
+    return new MultipartUploader(new BasicAuthProvider(server.getUrl()), http, 0, retries, 1);
+  }
+
+  private static byte[] createContent() {
+    final byte[] content = new byte[OBJECT_SIZE];
+    new Random(42).nextBytes(content);
+    return content;
+  }
+}
@@ -0,0 +1,48 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for pack cache settings.
+ */
+public class PackCacheTest {
+  private static final long MB = WindowCacheConfig.MB;
+
+  @Test
+  public void defaultTest() {
+    final WindowCacheConfig defaults = new WindowCacheConfig();
+    final WindowCacheConfig config = PackCache.createConfig(false, 0, 0, 0, null, 1024 * MB, 4096 * MB);
+    Assert.assertEquals(config.getPackedGitLimit(), defaults.getPackedGitLimit());
+    Assert.assertEquals(config.getPackedGitWindowSize(), defaults.getPackedGitWindowSize());
+    Assert.assertEquals(config.getDeltaBaseCacheLimit(), defaults.getDeltaBaseCacheLimit());
+    Assert.assertEquals(config.isPackedGitMMAP(), defaults.isPackedGitMMAP());
+  }
+
+  @Test
+  public void autoHeapTest() {
+    final WindowCacheConfig config = PackCache.createConfig(true, 0, 0, 0, null, 1024 * MB, 100 * MB);
+    Assert.assertFalse(config.isPackedGitMMAP());
+    Assert.assertEquals(config.getPackedGitLimit(), 100 * MB);
+    Assert.assertEquals(config.getDeltaBaseCacheLimit(), 100 * MB);
+  }
+
+  @Test
+  public void autoMmapTest() {
+    final WindowCacheConfig config = PackCache.createConfig(true, 0, 0, 0, null, 1024 * MB, 4096 * MB);
+    Assert.assertTrue(config.isPackedGitMMAP());
+    Assert.assertEquals(config.getPackedGitLimit(), 4096 * MB);
+    Assert.assertEquals(config.getPackedGitWindowSize(), MB);
+    Assert.assertEquals(config.getDeltaBaseCacheLimit(), 128 * MB);
+  }
+
+  @Test
+  public void explicitTest() {
+    final WindowCacheConfig config = PackCache.createConfig(true, 64 * MB, 64 * 1024, 32 * MB, false, 1024 * MB, 4096 * MB);
+    Assert.assertFalse(config.isPackedGitMMAP());
+    Assert.assertEquals(config.getPackedGitLimit(), 64 * MB);
+    Assert.assertEquals(config.getPackedGitWindowSize(), 64 * 1024);
+    Assert.assertEquals(config.getDeltaBaseCacheLimit(), 32 * MB);
+  }
+}
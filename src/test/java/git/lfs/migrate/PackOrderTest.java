@@ -0,0 +1,80 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.lib.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tests for leaf task reordering by pack position.
+ */
+public class PackOrderTest {
+  @Test
+  public void packOrderTest() throws Exception {
+    final Path temp = Files.createTempDirectory("git-lfs-migrate");
+    try (FileRepository repository = new FileRepository(temp.toFile())) {
+      repository.create(true);
+      final List<ObjectId> blobs = new ArrayList<>();
+      try (ObjectInserter inserter = repository.newObjectInserter()) {
+        final TreeFormatter tree = new TreeFormatter();
+        for (int i = 0; i < 20; ++i) {
+          final ObjectId blob = inserter.insert(Constants.OBJ_BLOB, ("Blob " + i + "\n").getBytes(StandardCharsets.UTF_8));
+          blobs.add(blob);
+          tree.append(String.format("file-%02d.txt", i), FileMode.REGULAR_FILE, blob);
+        }
+        final PersonIdent ident = new PersonIdent("Test", "test@example.com", 0, 0);
+        final CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(inserter.insert(tree));
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage("Test\n");
+        final ObjectId commitId = inserter.insert(commit);
+        inserter.flush();
+        final RefUpdate update = repository.updateRef(Constants.R_HEADS + Constants.MASTER);
+        update.setNewObjectId(commitId);
+        update.update();
+      }
+      new GC(repository).gc();
+      final PackFile pack = repository.getObjectDatabase().getPacks().iterator().next();
+      final List<ObjectId> expected = new ArrayList<>(blobs);
+      expected.sort(Comparator.comparingLong(id -> {
+        try {
+          return pack.getIndex().findOffset(id);
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+      }));
+      // Loose object follows packed objects.
+      final ObjectId loose;
+      try (ObjectInserter inserter = repository.newObjectInserter()) {
+        loose = inserter.insert(Constants.OBJ_BLOB, "Loose\n".getBytes(StandardCharsets.UTF_8));
+        inserter.flush();
+      }
+      expected.add(loose);
+
+      final List<ObjectId> input = new ArrayList<>(blobs);
+      Collections.shuffle(input);
+      input.add(0, loose);
+      final List<ObjectId> actual = new ArrayList<>();
+      final PackOrder order = new PackOrder(repository, 100, taskKey -> actual.add(taskKey.getObjectId()));
+      for (ObjectId id : input) {
+        order.accept(new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, id));
+      }
+      Assert.assertTrue(actual.isEmpty());
+      order.flush();
+      Assert.assertEquals(actual, expected);
+    } finally {
+      Main.removeDirectory(temp);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package git.lfs.migrate;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for PathTrie.
+ */
+public class PathTrieTest {
+  @Test
+  public void internTest() {
+    final PathTrie trie = new PathTrie();
+    Assert.assertEquals(trie.getPath(PathTrie.ROOT), "");
+
+    final int foo = trie.child(PathTrie.ROOT, "foo");
+    final int bar = trie.child(foo, "bar");
+    final int other = trie.child(PathTrie.ROOT, "bar");
+    Assert.assertEquals(trie.child(PathTrie.ROOT, "foo"), foo);
+    Assert.assertEquals(trie.child(foo, "bar"), bar);
+    Assert.assertNotEquals(other, bar);
+
+    Assert.assertEquals(trie.getPath(foo), "/foo");
+    Assert.assertEquals(trie.getPath(bar), "/foo/bar");
+    Assert.assertEquals(trie.getPath(other), "/bar");
+    Assert.assertEquals(trie.getParent(bar), foo);
+    Assert.assertEquals(trie.getName(bar), "bar");
+    Assert.assertEquals(trie.size(), 4);
+  }
+
+  @Test
+  public void growTest() {
+    final PathTrie trie = new PathTrie();
+    int node = PathTrie.ROOT;
+    final StringBuilder path = new StringBuilder();
+    for (int i = 0; i < 5000; ++i) {
+      node = trie.child(node, "d" + (i % 10));
+      path.append("/d").append(i % 10);
+    }
+    Assert.assertEquals(trie.getPath(node), path.toString());
+  }
+}
@@ -0,0 +1,75 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for progress output helpers.
+ */
+public class ProgressReporterTest {
+  @Test
+  public void formatTest() {
+    Assert.assertEquals(ProgressReporter.formatBytes(1000), "1000 B");
+    Assert.assertEquals(ProgressReporter.formatBytes(1536), "1.5 KiB");
+    Assert.assertEquals(ProgressReporter.formatBytes(3L << 30), "3.0 GiB");
+    Assert.assertEquals(ProgressReporter.formatDuration(3725), "1:02:05");
+  }
+
+  @Test
+  public void bytesTest() {
+    final ConversionStats stats = new ConversionStats();
+    try (ProgressReporter reporter = new ProgressReporter("processed", new AtomicLong(10), new ProgressReporter.Estimate(100), stats, null)) {
+      stats.addExpected(4096);
+      stats.addInflated(1024);
+      // Byte total grows while discovery is in progress: no ETA.
+      String message = reporter.format(false);
+      Assert.assertTrue(message.startsWith("  processed: 0/10 (estimated: 100), inflated: 1.0 KiB/4.0 KiB (discovering)"), message);
+      Assert.assertFalse(message.contains("ETA"), message);
+      reporter.setDiscovered();
+      stats.addInflated(1024);
+      message = reporter.format(false);
+      Assert.assertTrue(message.startsWith("  processed: 0/10, inflated: 2.0 KiB/4.0 KiB ["), message);
+      Assert.assertTrue(message.contains("ETA"), message);
+    }
+  }
+
+  @Test
+  public void estimateTest() throws Exception {
+    final Path temp = Files.createTempDirectory("git-lfs-migrate");
+    try (FileRepository repository = new FileRepository(temp.toFile())) {
+      repository.create(true);
+      try (ObjectInserter inserter = repository.newObjectInserter()) {
+        inserter.insert(Constants.OBJ_BLOB, "Loose\n".getBytes(StandardCharsets.UTF_8));
+        inserter.flush();
+      }
+      final ProgressReporter.Estimate estimate = ProgressReporter.estimate(repository);
+      Assert.assertEquals(estimate.getObjects(), 1);
+    } finally {
+      Main.removeDirectory(temp);
+    }
+  }
+
+  @Test
+  public void rateTest() {
+    final long second = TimeUnit.SECONDS.toNanos(1);
+    final ProgressReporter.Rate rate = new ProgressReporter.Rate();
+    Assert.assertEquals(rate.update(0, second), 0.0);
+    Assert.assertEquals(rate.update(100, second * 2), 100.0, 0.001);
+    // Single slow interval doesn't reset average.
+    final double slow = rate.update(100, second * 3);
+    Assert.assertTrue(slow > 90 && slow < 100, "Unexpected rate: " + slow);
+    for (int i = 4; i < 200; ++i) {
+      rate.update(100 + (i - 3) * 10, second * i);
+    }
+    Assert.assertEquals(rate.update(100 + 197 * 10, second * 200), 10.0, 0.5);
+  }
+}
@@ -0,0 +1,66 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Tests for destination refs recreation.
+ */
+public class RecreateRefsTest {
+  @Test
+  public void packedRefsTest() throws Exception {
+    final Path temp = Files.createTempDirectory("git-lfs-migrate");
+    try (FileRepository repository = new FileRepository(temp.toFile())) {
+      repository.create(true);
+      final ObjectId commitId;
+      try (ObjectInserter inserter = repository.newObjectInserter()) {
+        final PersonIdent ident = new PersonIdent("Test", "test@example.com", 0, 0);
+        final CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(inserter.insert(new TreeFormatter()));
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage("Test\n");
+        commitId = inserter.insert(commit);
+        inserter.flush();
+      }
+      // U+FFFD is before U+1F600 in UTF-8, but after it in UTF-16.
+      final String replacement = "refs/heads/\uFFFD";
+      final String emoji = "refs/heads/\uD83D\uDE00";
+      final Map<String, Ref> srcRefs = new TreeMap<>();
+      for (String name : Arrays.asList(Constants.HEAD, "refs/heads/master", emoji, replacement)) {
+        srcRefs.put(name, new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, name, commitId));
+      }
+      final Map<TaskKey, ObjectId> converted = new HashMap<>();
+      converted.put(new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, commitId), commitId);
+      Main.recreateRefs(srcRefs, repository, converted);
+
+      final List<String> names = new ArrayList<>();
+      for (String line : Files.readAllLines(temp.resolve(Constants.PACKED_REFS), StandardCharsets.UTF_8)) {
+        if (!line.startsWith("#")) {
+          names.add(line.substring(line.indexOf(' ') + 1));
+        }
+      }
+      // Detached HEAD is not written to packed-refs.
+      Assert.assertEquals(names, Arrays.asList("refs/heads/master", replacement, emoji));
+      Assert.assertEquals(repository.exactRef(Constants.HEAD).getObjectId(), commitId);
+      Assert.assertFalse(repository.exactRef(Constants.HEAD).isSymbolic());
+    } finally {
+      Main.removeDirectory(temp);
+    }
+  }
+
+  @Test
+  public void compareCodePointsTest() {
+    Assert.assertTrue(Main.compareCodePoints("a", "b") < 0);
+    Assert.assertTrue(Main.compareCodePoints("ab", "a") > 0);
+    Assert.assertEquals(Main.compareCodePoints("\uD83D\uDE00", "\uD83D\uDE00"), 0);
+    Assert.assertTrue(Main.compareCodePoints("\uFFFD", "\uD83D\uDE00") < 0);
+  }
+}
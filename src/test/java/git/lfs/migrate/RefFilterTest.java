@@ -0,0 +1,43 @@
+package git.lfs.migrate;
+
+import org.eclipse.jgit.errors.InvalidPatternException;
+import org.jetbrains.annotations.NotNull;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Ref filter test.
+ */
+public class RefFilterTest {
+  @DataProvider
+  public Object[][] matchProvider() {
+    return new Object[][]{
+        new Object[]{"refs/heads/master", true},
+        new Object[]{"refs/heads/feature/foo", true},
+        new Object[]{"refs/tags/v1.0", true},
+        new Object[]{"refs/tags/ci-1234", false},
+        new Object[]{"refs/pull/1/head", false},
+        new Object[]{"refs/keep-around/0123456789", false},
+        new Object[]{"refs/notes/commits", false},
+    };
+  }
+
+  @Test(dataProvider = "matchProvider")
+  public void matchTest(@NotNull String refName, boolean expected) throws InvalidPatternException {
+    final RefFilter filter = new RefFilter(
+        Arrays.asList("refs/heads/*", "refs/tags", "refs/pull"),
+        Arrays.asList("refs/tags/ci-*", "refs/pull/")
+    );
+    Assert.assertEquals(filter.isMatch(refName), expected);
+  }
+
+  @Test
+  public void emptyTest() throws InvalidPatternException {
+    final RefFilter filter = new RefFilter(Collections.emptyList(), Collections.emptyList());
+    Assert.assertTrue(filter.isMatch("refs/pull/1/head"));
+  }
+}
@@ -0,0 +1,110 @@
+package git.lfs.migrate;
+
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import org.eclipse.jgit.errors.InvalidPatternException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.*;
+import org.jetbrains.annotations.NotNull;
+import org.mapdb.DBMaker;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streaming commit conversion.
+ */
+public class StreamingConverterTest {
+  @Test
+  public void sweepTest() throws IOException, InvalidPatternException {
+    final FileSystem fs = Jimfs.newFileSystem(Configuration.unix());
+    final Repository srcRepo = new InMemoryRepository(new DfsRepositoryDescription("src"));
+    final ObjectId head = createHistory(srcRepo);
+    final Ref ref = new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, "refs/heads/master", head);
+    final TaskKey headKey = new TaskKey(GitConverter.TaskType.Simple, PathTrie.ROOT, head);
+
+    final Map<TaskKey, ObjectId> expected = new HashMap<>();
+    final StreamingConverter full = new StreamingConverter(createConverter(fs), srcRepo, new InMemoryRepository(new DfsRepositoryDescription("full")), expected, null);
+    full.convert(Collections.singletonList(ref));
+
+    // Sweep after every commit: merge parent is released only after conversion of all its children.
+    final Repository dstRepo = new InMemoryRepository(new DfsRepositoryDescription("dst"));
+    final Map<TaskKey, ObjectId> converted = new HashMap<>();
+    final StreamingConverter sweeping = new StreamingConverter(createConverter(fs), srcRepo, dstRepo, converted, null, 1);
+    final AtomicInteger commits = new AtomicInteger();
+    try (ObjectInserter inserter = dstRepo.newObjectInserter()) {
+      sweeping.convert(Collections.singletonList(ref), new ObjectInserter.Filter() {
+        @Override
+        protected ObjectInserter delegate() {
+          return inserter;
+        }
+
+        @Override
+        public ObjectId insert(int type, byte[] data) throws IOException {
+          if (type == Constants.OBJ_COMMIT) {
+            commits.incrementAndGet();
+          }
+          return super.insert(type, data);
+        }
+      });
+    }
+
+    Assert.assertEquals(converted.get(headKey), expected.get(headKey));
+    Assert.assertTrue(dstRepo.hasObject(converted.get(headKey)));
+    Assert.assertTrue(sweeping.getRetained() < full.getRetained());
+    // Released commit would be converted again.
+    Assert.assertEquals(commits.get(), 5);
+  }
+
+  @NotNull
+  private static GitConverter createConverter(@NotNull FileSystem fs) throws IOException, InvalidPatternException {
+    return new GitConverter(DBMaker.memoryDB().make(), fs.getPath("/tmp/migrate"), new String[]{"*.bin"});
+  }
+
+  /**
+   * Create history with two branches from root commit and merge commit.
+   */
+  @NotNull
+  private static ObjectId createHistory(@NotNull Repository repository) throws IOException {
+    try (ObjectInserter inserter = repository.newObjectInserter()) {
+      final ObjectId root = commit(inserter, "Root", tree(inserter, "a", "Readme"));
+      final ObjectId left = commit(inserter, "Left", tree(inserter, "b", "Readme"), root);
+      final ObjectId right = commit(inserter, "Right", tree(inserter, "c", "Right"), root);
+      final ObjectId merge = commit(inserter, "Merge", tree(inserter, "b", "Right"), left, right);
+      final ObjectId head = commit(inserter, "Head", tree(inserter, "d", "Right"), merge);
+      inserter.flush();
+      return head;
+    }
+  }
+
+  @NotNull
+  private static ObjectId tree(@NotNull ObjectInserter inserter, @NotNull String data, @NotNull String readme) throws IOException {
+    final TreeFormatter nested = new TreeFormatter();
+    nested.append("nested.bin", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, ("Nested " + data).getBytes(StandardCharsets.UTF_8)));
+    final TreeFormatter tree = new TreeFormatter();
+    tree.append("README.md", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, readme.getBytes(StandardCharsets.UTF_8)));
+    tree.append("data.bin", FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, data.getBytes(StandardCharsets.UTF_8)));
+    tree.append("docs", FileMode.TREE, inserter.insert(nested));
+    return inserter.insert(tree);
+  }
+
+  @NotNull
+  private static ObjectId commit(@NotNull ObjectInserter inserter, @NotNull String message, @NotNull ObjectId tree, @NotNull ObjectId... parents) throws IOException {
+    final PersonIdent ident = new PersonIdent("Test", "test@example.com", 0, 0);
+    final CommitBuilder commit = new CommitBuilder();
+    commit.setTreeId(tree);
+    commit.setParentIds(parents);
+    commit.setAuthor(ident);
+    commit.setCommitter(ident);
+    commit.setMessage(message + "\n");
+    return inserter.insert(commit);
+  }
+}
@@ -0,0 +1,173 @@
+package git.lfs.migrate;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import ru.bozaro.gitlfs.client.Client;
+import ru.bozaro.gitlfs.client.auth.BasicAuthProvider;
+import ru.bozaro.gitlfs.client.io.ByteArrayStreamProvider;
+import ru.bozaro.gitlfs.common.data.Meta;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Upload path benchmark against in-process LFS server.
+ * <p>
+ * Run {@link #main(String[])} for benchmark over upload thread counts (--help for server profile options).
+ * Test method runs small conversion with injected server errors for offline upload path check.
+ */
+public class UploadBenchmark {
+  @NotNull
+  private static final Logger log = LoggerFactory.getLogger(UploadBenchmark.class);
+
+  @Test
+  public void uploadTest() throws Exception {
+    final Path temp = Files.createTempDirectory("git-lfs-migrate");
+    try {
+      final List<Meta> objects = createRepository(temp.resolve("src.git"), 50, 64 * 1024, new Random(42));
+      final BenchmarkArgs args = new BenchmarkArgs();
+      args.errorRate = 0.05;
+      args.existsRatio = 0.25;
+      try (LfsTestServer server = createServer(args)) {
+        run(server, temp, 4);
+        for (Meta meta : objects) {
+          Assert.assertTrue(server.hasObject(meta.getOid()), meta.getOid());
+        }
+        Assert.assertTrue(server.getErrors() > 0);
+      }
+    } finally {
+      Main.removeDirectory(temp);
+    }
+  }
+
+  public static void main(@NotNull String[] argv) throws Exception {
+    final BenchmarkArgs args = new BenchmarkArgs();
+    final JCommander jc = new JCommander(args);
+    jc.parse(argv);
+    if (args.help) {
+      jc.usage();
+      return;
+    }
+    final Path temp = Files.createTempDirectory("git-lfs-migrate");
+    try {
+      final List<Meta> objects = createRepository(temp.resolve("src.git"), args.objects, args.maxSize * 1024, new Random(42));
+      final long totalSize = objects.stream().mapToLong(Meta::getSize).sum();
+      log.info("Source repository: {} LFS objects ({})", objects.size(), ProgressReporter.formatBytes(totalSize));
+      final List<String> results = new ArrayList<>();
+      for (int threads : args.threads) {
+        // Fresh server for every run: objects uploaded by previous run must not be reported as existing.
+        try (LfsTestServer server = createServer(args)) {
+          final long time = System.nanoTime();
+          run(server, temp, threads);
+          final double seconds = (System.nanoTime() - time) / 1e9;
+          results.add(String.format("  threads: %3d, time: %7.2f s, objects: %8.1f/s, bytes: %s/s, uploaded: %s, server errors: %d",
+              threads, seconds, objects.size() / seconds, ProgressReporter.formatBytes((long) (totalSize / seconds)),
+              ProgressReporter.formatBytes(server.getUploadedBytes()), server.getErrors()));
+        }
+      }
+      log.info("Benchmark results (latency: {} ms, bandwidth: {}, error rate: {}, exists ratio: {}):",
+          args.latency, args.bandwidth > 0 ? ProgressReporter.formatBytes(args.bandwidth * 1024) + "/s" : "unlimited", args.errorRate, args.existsRatio);
+      for (String result : results) {
+        log.info(result);
+      }
+    } finally {
+      Main.removeDirectory(temp);
+    }
+  }
+
+  @NotNull
+  private static LfsTestServer createServer(@NotNull BenchmarkArgs args) throws Exception {
+    final LfsTestServer server = new LfsTestServer(0);
+    server.setLatency(args.latency);
+    server.setBandwidth(args.bandwidth * 1024);
+    server.setErrorRate(args.errorRate);
+    server.setExistsRatio(args.existsRatio);
+    return server;
+  }
+
+  /**
+   * Convert repository with upload to server.
+   */
+  private static void run(@NotNull LfsTestServer server, @NotNull Path temp, int threads) throws Exception {
+    final Main.CmdArgs cmd = new Main.CmdArgs();
+    new JCommander(cmd).parse(
+        "-s", temp.resolve("src.git").toString(),
+        "-d", temp.resolve("dst.git").toString(),
+        "-c", temp.toString(),
+        "-u", Integer.toString(threads)
+    );
+    Files.deleteIfExists(temp.resolve("git-lfs-migrate.mapdb"));
+    try (HttpTransport transport = new HttpTransport(threads + 1, (threads + 1) * 2, 30000, 0, 5, 10, false)) {
+      final Client client = new Client(new BasicAuthProvider(server.getUrl()), transport.getHttpClient());
+      Main.processRepository(cmd, client, transport, "*.bin");
+    }
+  }
+
+  /**
+   * Create repository with single commit of random LFS files.
+   *
+   * @param maxSize Maximal file size (most files are much smaller).
+   * @return LFS objects.
+   */
+  @NotNull
+  private static List<Meta> createRepository(@NotNull Path path, int count, long maxSize, @NotNull Random random) throws Exception {
+    final List<Meta> result = new ArrayList<>();
+    try (Repository repository = new FileRepositoryBuilder().setGitDir(path.toFile()).build()) {
+      repository.create(true);
+      try (ObjectInserter inserter = repository.newObjectInserter()) {
+        final TreeFormatter tree = new TreeFormatter();
+        for (int i = 0; i < count; ++i) {
+          // Heavy tail size distribution: a lot of small files and a few large.
+          final double scale = random.nextDouble();
+          final byte[] content = new byte[(int) (maxSize * scale * scale * scale) + 1];
+          random.nextBytes(content);
+          result.add(Client.generateMeta(new ByteArrayStreamProvider(content)));
+          tree.append(String.format("file-%06d.bin", i), FileMode.REGULAR_FILE, inserter.insert(Constants.OBJ_BLOB, content));
+        }
+        final PersonIdent ident = new PersonIdent("Benchmark", "benchmark@example.com", 0, 0);
+        final CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(inserter.insert(tree));
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage("Benchmark\n");
+        final ObjectId commitId = inserter.insert(commit);
+        inserter.flush();
+        final RefUpdate update = repository.updateRef(Constants.R_HEADS + Constants.MASTER);
+        update.setNewObjectId(commitId);
+        update.update();
+      }
+    }
+    return result;
+  }
+
+  public static class BenchmarkArgs {
+    @Parameter(names = {"--objects"}, description = "LFS object count")
+    private int objects = 2000;
+    @Parameter(names = {"--max-size"}, description = "Maximal LFS object size in kilobytes")
+    private long maxSize = 4096;
+    // Single upload thread is not measured: gitlfs batch worker busy-waits for free pool thread.
+    @Parameter(names = {"--threads"}, description = "Upload thread counts (comma separated)")
+    private List<Integer> threads = new ArrayList<>(Arrays.asList(2, 4, 8, 16));
+    @Parameter(names = {"--latency"}, description = "Server response latency in milliseconds")
+    private long latency = 20;
+    @Parameter(names = {"--bandwidth"}, description = "Upload bandwidth of single request in kilobytes per second (0 for unlimited)")
+    private long bandwidth = 0;
+    @Parameter(names = {"--error-rate"}, description = "Server error (503) probability for every request")
+    private double errorRate = 0;
+    @Parameter(names = {"--exists-ratio"}, description = "Fraction of objects already existing on server")
+    private double existsRatio = 0;
+    @Parameter(names = {"-h", "--help"}, description = "Show help", help = true)
+    private boolean help = false;
+  }
+}
@@ -0,0 +1,85 @@
+package git.lfs.migrate;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for write-behind cache.
+ */
+public class WriteBehindCacheTest {
+  @Test
+  public void concurrentPutTest() throws Exception {
+    final Map<String, Integer> storage = new ConcurrentHashMap<>();
+    final AtomicInteger commits = new AtomicInteger();
+    final AtomicInteger missed = new AtomicInteger();
+    final int threads = 8;
+    final int count = 1000;
+    try (WriteBehindCache<String, Integer> cache = new WriteBehindCache<>("test", storage, commits::incrementAndGet)) {
+      final List<Thread> writers = new ArrayList<>();
+      for (int i = 0; i < threads; ++i) {
+        final int thread = i;
+        writers.add(new Thread(() -> {
+          for (int j = 0; j < count; ++j) {
+            final String key = thread + ":" + j;
+            cache.put(key, j);
+            // Value is visible right after put.
+            if (!Integer.valueOf(j).equals(cache.get(key))) {
+              missed.incrementAndGet();
+            }
+          }
+        }));
+      }
+      writers.forEach(Thread::start);
+      for (Thread writer : writers) {
+        writer.join();
+      }
+      cache.flush();
+      Assert.assertEquals(cache.getPending(), 0);
+    }
+    Assert.assertEquals(missed.get(), 0);
+    Assert.assertEquals(storage.size(), threads * count);
+    Assert.assertTrue(commits.get() > 0);
+  }
+
+  @Test
+  public void maxPendingTest() throws Exception {
+    final Map<String, Integer> storage = new ConcurrentHashMap<>();
+    final int maxPending = 10;
+    // Slow commits: writer falls behind.
+    try (WriteBehindCache<String, Integer> cache = new WriteBehindCache<>("test", storage, () -> {
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, maxPending)) {
+      for (int i = 0; i < 200; ++i) {
+        cache.put(String.valueOf(i), i);
+        Assert.assertTrue(cache.getPending() < maxPending, "Pending values: " + cache.getPending());
+      }
+    }
+    Assert.assertEquals(storage.size(), 200);
+  }
+
+  @Test
+  public void closeTest() throws Exception {
+    final Map<String, String> storage = new ConcurrentHashMap<>();
+    final AtomicInteger commits = new AtomicInteger();
+    final WriteBehindCache<String, String> cache = new WriteBehindCache<>("test", storage, commits::incrementAndGet);
+    cache.put("a", "1");
+    cache.close();
+    Assert.assertEquals(storage.get("a"), "1");
+    // Put after close is written by flush.
+    cache.put("b", "2");
+    Assert.assertEquals(cache.get("b"), "2");
+    cache.flush();
+    Assert.assertEquals(storage.get("b"), "2");
+    Assert.assertEquals(cache.getPending(), 0);
+  }
+}